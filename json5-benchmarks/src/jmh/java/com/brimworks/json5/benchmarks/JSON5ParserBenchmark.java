@@ -0,0 +1,411 @@
+package com.brimworks.json5.benchmarks;
+
+import com.brimworks.json5.JSON5Limits;
+import com.brimworks.json5.JSON5LinesExecutor;
+import com.brimworks.json5.JSON5ParallelParser;
+import com.brimworks.json5.JSON5Parser;
+import com.brimworks.json5.JSON5Projection;
+import com.brimworks.json5.JSON5Reader;
+import com.brimworks.json5.JSON5ParserPool;
+import com.brimworks.json5.JSON5StructuralIndex;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Measures the throughput of each {@link JSON5Parser} entry point over the
+ * documents in {@link Payload}. Besides operations per second, every benchmark
+ * reports a {@code megabytes} secondary metric (MB/s of UTF-8 input) and, when
+ * run through the gradle task, the allocation rate via the gc profiler.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JSON5ParserBenchmark {
+    private static final String SOURCE = "benchmark";
+
+    @Param({ "SMALL_RPC", "LARGE_CONFIG", "NUMBER_ARRAY", "STRING_HEAVY", "UNICODE_IDENTIFIERS" })
+    public Payload payload;
+
+    private String text;
+    private byte[] utf8;
+    private ByteBuffer direct;
+    private Path file;
+
+    /**
+     * Per-thread parser and visitor, so setup cost is excluded from the
+     * measurement.
+     */
+    @State(Scope.Thread)
+    public static class ParserState {
+        SinkVisitor visitor = new SinkVisitor();
+        JSON5Parser parser = new JSON5Parser(visitor);
+    }
+
+    /**
+     * Per-thread parser with a visitor which uses the zero-copy string callbacks.
+     */
+    @State(Scope.Thread)
+    public static class StringViewParserState extends ParserState {
+        {
+            visitor = new StringViewSinkVisitor();
+            parser = new JSON5Parser(visitor);
+        }
+    }
+
+    /**
+     * Per-thread parser with a visitor which never converts numbers.
+     */
+    @State(Scope.Thread)
+    public static class NumberViewParserState extends ParserState {
+        {
+            visitor = new NumberViewSinkVisitor();
+            parser = new JSON5Parser(visitor);
+        }
+    }
+
+    /**
+     * Per-thread parser which only visits a few values of each payload.
+     */
+    @State(Scope.Thread)
+    public static class ProjectionParserState extends ParserState {
+        {
+            parser.setProjection(new JSON5Projection("/id", "/services/*/name", "/0"));
+        }
+    }
+
+    /**
+     * Per-thread parser which lexes on a dedicated thread.
+     */
+    @State(Scope.Thread)
+    public static class PipelineParserState extends ParserState {
+        ExecutorService lexer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "json5-lexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        {
+            parser.setPipeline(lexer);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            lexer.shutdown();
+        }
+    }
+
+    /**
+     * Per-thread parser which reads channels on a dedicated thread.
+     */
+    @State(Scope.Thread)
+    public static class ReadAheadParserState extends ParserState {
+        ExecutorService reader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "json5-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        {
+            parser.setReadAhead(reader);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            reader.shutdown();
+        }
+    }
+
+    /**
+     * Per-thread parser with limits which every payload is within, to measure the
+     * cost of enforcing them.
+     */
+    @State(Scope.Thread)
+    public static class LimitsParserState extends ParserState {
+        {
+            parser.setLimits(new JSON5Limits().setMaxDocumentBytes(64 * 1024 * 1024).setMaxTokenBytes(1024 * 1024)
+                    .setMaxStringChars(1024 * 1024).setMaxDepth(512).setMaxNumberDigits(1000));
+        }
+    }
+
+    /**
+     * Per-thread parser for pull style reading, which takes over the parser.
+     */
+    @State(Scope.Thread)
+    public static class ReaderState {
+        JSON5Parser parser = new JSON5Parser();
+    }
+
+    /**
+     * Pool shared by all threads, each thread has its own visitor.
+     */
+    @State(Scope.Benchmark)
+    public static class PoolState {
+        JSON5ParserPool pool = new JSON5ParserPool();
+    }
+
+    /**
+     * Parallel parser using the common fork join pool, with chunks small enough
+     * to split the 1 MB payloads between threads.
+     */
+    @State(Scope.Benchmark)
+    public static class ParallelState {
+        JSON5ParallelParser parser = new JSON5ParallelParser().setChunkSize(64 * 1024);
+    }
+
+    /**
+     * About 1 MB of JSON5 Lines (one record per line, like an event log), which
+     * is the same for every payload, and an executor which parses it on the
+     * common fork join pool.
+     */
+    @State(Scope.Benchmark)
+    public static class LinesState {
+        byte[] utf8;
+        JSON5LinesExecutor executor = new JSON5LinesExecutor().setBatchSize(64 * 1024);
+
+        @Setup(Level.Trial)
+        public void setup() {
+            Random random = new Random(0);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; sb.length() < 1024 * 1024; i++) {
+                sb.append("{ts: ").append(1600000000000L + i).append(", level: '")
+                        .append(random.nextBoolean() ? "info" : "warn").append("', user: {id: ")
+                        .append(random.nextInt(100000)).append(", tags: ['a', 'b']}, latency: ")
+                        .append(random.nextDouble()).append(", msg: \"request ").append(i).append(" done\"}\n");
+            }
+            utf8 = sb.toString().getBytes(UTF_8);
+        }
+    }
+
+    /**
+     * Per-thread parser which accepts a document per line.
+     */
+    @State(Scope.Thread)
+    public static class LinesParserState extends ParserState {
+        {
+            parser.setMultiDocument(true);
+        }
+    }
+
+    /**
+     * Per-thread structural index, for comparing the cost of finding value
+     * boundaries with the cost of a full parse.
+     */
+    @State(Scope.Thread)
+    public static class IndexState {
+        JSON5StructuralIndex index = new JSON5StructuralIndex();
+    }
+
+    /**
+     * Secondary metric which counts the megabytes of input parsed.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            megabytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        text = payload.generate();
+        utf8 = text.getBytes(UTF_8);
+        direct = ByteBuffer.allocateDirect(utf8.length);
+        direct.put(utf8).flip();
+        file = Files.createTempFile("json5-benchmark-", ".json5");
+        Files.write(file, utf8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private long done(ParserState state, Throughput throughput) {
+        throughput.megabytes += utf8.length / (1024.0 * 1024.0);
+        return state.visitor.reset();
+    }
+
+    @Benchmark
+    public long parseByteBuffer(ParserState state, Throughput throughput) {
+        state.parser.parse(ByteBuffer.wrap(utf8), SOURCE);
+        return done(state, throughput);
+    }
+
+    @Benchmark
+    public long parseBytes(ParserState state, Throughput throughput) {
+        state.parser.parse(utf8, SOURCE);
+        return done(state, throughput);
+    }
+
+    @Benchmark
+    public long parseDirectByteBuffer(ParserState state, Throughput throughput) {
+        state.parser.parse(direct.duplicate(), SOURCE);
+        return done(state, throughput);
+    }
+
+    @Benchmark
+    public long parseByteBufferStringView(StringViewParserState state, Throughput throughput) {
+        state.parser.parse(ByteBuffer.wrap(utf8), SOURCE);
+        return done(state, throughput);
+    }
+
+    @Benchmark
+    public long parseByteBufferNumberView(NumberViewParserState state, Throughput throughput) {
+        state.parser.parse(ByteBuffer.wrap(utf8), SOURCE);
+        return done(state, throughput);
+    }
+
+    @Benchmark
+    public long parseByteBufferPipeline(PipelineParserState state, Throughput throughput) {
+        state.parser.parse(ByteBuffer.wrap(utf8), SOURCE);
+        return done(state, throughput);
+    }
+
+    @Benchmark
+    public long parseByteBufferLimits(LimitsParserState state, Throughput throughput) {
+        state.parser.parse(ByteBuffer.wrap(utf8), SOURCE);
+        return done(state, throughput);
+    }
+
+    @Benchmark
+    public long validateByteBuffer(ParserState state, Throughput throughput) {
+        state.parser.validate(ByteBuffer.wrap(utf8), SOURCE);
+        return done(state, throughput);
+    }
+
+    @Benchmark
+    public long parseByteBufferProjection(ProjectionParserState state, Throughput throughput) {
+        state.parser.parse(ByteBuffer.wrap(utf8), SOURCE);
+        return done(state, throughput);
+    }
+
+    @Benchmark
+    public double readByteBuffer(ReaderState state, Throughput throughput) throws IOException {
+        JSON5Reader reader = state.parser.reader(ByteBuffer.wrap(utf8), SOURCE);
+        double sum = 0;
+        for (JSON5Reader.Token token = reader.nextToken(); JSON5Reader.Token.END_OF_STREAM != token; token = reader
+                .nextToken()) {
+            switch (token) {
+                case KEY:
+                case STRING:
+                    sum += reader.getString().length();
+                    break;
+                case NUMBER:
+                    sum += reader.getDouble();
+                    break;
+                default:
+                    sum++;
+            }
+        }
+        throughput.megabytes += utf8.length / (1024.0 * 1024.0);
+        return sum;
+    }
+
+    @Benchmark
+    public long structuralIndex(IndexState state, Throughput throughput) {
+        state.index.index(ByteBuffer.wrap(utf8));
+        throughput.megabytes += utf8.length / (1024.0 * 1024.0);
+        return state.index.size();
+    }
+
+    /**
+     * Only the NUMBER_ARRAY and STRING_HEAVY payloads have an array root, the
+     * others are parsed by a single pooled parser for comparison.
+     */
+    @Benchmark
+    public long parseParallel(ParallelState parallel, PoolState pool, Throughput throughput) {
+        throughput.megabytes += utf8.length / (1024.0 * 1024.0);
+        if ('[' != utf8[0]) {
+            SinkVisitor visitor = new SinkVisitor();
+            pool.pool.parse(ByteBuffer.wrap(utf8), SOURCE, visitor);
+            return visitor.reset();
+        }
+        long checksum = 0;
+        for (SinkVisitor visitor : parallel.parser.parseArray(ByteBuffer.wrap(utf8), SOURCE, SinkVisitor::new)) {
+            checksum += visitor.reset();
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public long parseLines(LinesState lines, LinesParserState state, Throughput throughput) {
+        state.parser.parse(lines.utf8, SOURCE);
+        throughput.megabytes += lines.utf8.length / (1024.0 * 1024.0);
+        return state.visitor.reset();
+    }
+
+    @Benchmark
+    public long parseLinesExecutor(LinesState lines, Throughput throughput) throws IOException {
+        long[] checksum = new long[1];
+        lines.executor.parse(Channels.newChannel(new ByteArrayInputStream(lines.utf8)), SOURCE, SinkVisitor::new,
+                visitor -> checksum[0] += visitor.reset());
+        throughput.megabytes += lines.utf8.length / (1024.0 * 1024.0);
+        return checksum[0];
+    }
+
+    @Benchmark
+    public long parseString(ParserState state, Throughput throughput) {
+        state.parser.parse(text, SOURCE);
+        return done(state, throughput);
+    }
+
+    @Benchmark
+    public long parseStringNewParser(ParserState state, Throughput throughput) {
+        new JSON5Parser(state.visitor).parse(text, SOURCE);
+        return done(state, throughput);
+    }
+
+    @Benchmark
+    public long parseStringPooled(PoolState pool, ParserState state, Throughput throughput) {
+        pool.pool.parse(text, SOURCE, state.visitor);
+        return done(state, throughput);
+    }
+
+    @Benchmark
+    public long parsePath(ParserState state, Throughput throughput) throws IOException {
+        state.parser.parse(file);
+        return done(state, throughput);
+    }
+
+    @Benchmark
+    public long parseChannel(ParserState state, Throughput throughput) throws IOException {
+        state.parser.parse(Channels.newChannel(new ByteArrayInputStream(utf8)), SOURCE, null);
+        return done(state, throughput);
+    }
+
+    @Benchmark
+    public long parseChannelReadAhead(ReadAheadParserState state, Throughput throughput) throws IOException {
+        state.parser.parse(Channels.newChannel(new ByteArrayInputStream(utf8)), SOURCE, null);
+        return done(state, throughput);
+    }
+}
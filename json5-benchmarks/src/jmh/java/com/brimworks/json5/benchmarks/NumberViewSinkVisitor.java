@@ -0,0 +1,15 @@
+package com.brimworks.json5.benchmarks;
+
+import com.brimworks.json5.JSON5NumberView;
+
+/**
+ * Variant of {@link SinkVisitor} which consumes numbers through the
+ * {@link JSON5NumberView} callback without converting them, as a pass-through
+ * consumer would.
+ */
+public class NumberViewSinkVisitor extends SinkVisitor {
+    @Override
+    public void visitNumber(JSON5NumberView val, int line, long offset) {
+        fold(val.getKind().ordinal());
+    }
+}
@@ -0,0 +1,160 @@
+package com.brimworks.json5.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Representative JSON5 documents used by the benchmarks. Documents are
+ * generated from a fixed seed so every run parses the exact same input.
+ */
+public enum Payload {
+    /**
+     * A single small request/response message, the kind of document an RPC
+     * server parses tens of thousands of times per second.
+     */
+    SMALL_RPC {
+        @Override
+        void generate(StringBuilder sb, Random random) {
+            sb.append("{\n");
+            sb.append("  // request envelope\n");
+            sb.append("  jsonrpc: '2.0',\n");
+            sb.append("  id: ").append(random.nextInt(100000)).append(",\n");
+            sb.append("  method: \"account.transfer\",\n");
+            sb.append("  params: {\n");
+            sb.append("    from: \"acct-").append(random.nextInt(1000000)).append("\",\n");
+            sb.append("    to: \"acct-").append(random.nextInt(1000000)).append("\",\n");
+            sb.append("    amount: ").append(random.nextInt(100000)).append(".").append(random.nextInt(100))
+                    .append(",\n");
+            sb.append("    memo: 'rent for \\'March\\'',\n");
+            sb.append("    dryRun: false,\n");
+            sb.append("    tags: [\"monthly\", \"household\"],\n");
+            sb.append("  },\n");
+            sb.append("}\n");
+        }
+    },
+
+    /**
+     * A large pretty-printed configuration file with comments, nested objects
+     * and a mix of all value types.
+     */
+    LARGE_CONFIG {
+        @Override
+        void generate(StringBuilder sb, Random random) {
+            sb.append("/*\n * Generated service configuration.\n */\n{\n");
+            sb.append("  services: [\n");
+            for (int i = 0; sb.length() < TARGET_SIZE; i++) {
+                sb.append("    // service ").append(i).append("\n");
+                sb.append("    {\n");
+                sb.append("      name: 'service-").append(i).append("',\n");
+                sb.append("      enabled: ").append(random.nextBoolean()).append(",\n");
+                sb.append("      port: ").append(1024 + random.nextInt(60000)).append(",\n");
+                sb.append("      timeoutSeconds: ").append(random.nextInt(120)).append(".5,\n");
+                sb.append("      owner: null,\n");
+                sb.append("      endpoints: {\n");
+                sb.append("        health: \"/health\",\n");
+                sb.append("        metrics: \"/metrics\",\n");
+                sb.append("      },\n");
+                sb.append("      retry: { attempts: ").append(random.nextInt(10)).append(", backoff: 0x")
+                        .append(Integer.toHexString(random.nextInt(0xFFFF))).append(" },\n");
+                sb.append("    },\n");
+            }
+            sb.append("  ],\n}\n");
+        }
+    },
+
+    /**
+     * A flat array dominated by numbers: integers, fractional numbers and
+     * exponents.
+     */
+    NUMBER_ARRAY {
+        @Override
+        void generate(StringBuilder sb, Random random) {
+            sb.append("[");
+            for (int i = 0; sb.length() < TARGET_SIZE; i++) {
+                if (i > 0)
+                    sb.append(",");
+                switch (i % 4) {
+                    case 0:
+                        sb.append(random.nextInt());
+                        break;
+                    case 1:
+                        sb.append(random.nextLong());
+                        break;
+                    case 2:
+                        sb.append(random.nextInt(100000)).append(".").append(random.nextInt(1000));
+                        break;
+                    default:
+                        sb.append(random.nextDouble());
+                        break;
+                }
+            }
+            sb.append("]");
+        }
+    },
+
+    /**
+     * An array of records whose values are mostly long strings, some with
+     * escape sequences.
+     */
+    STRING_HEAVY {
+        @Override
+        void generate(StringBuilder sb, Random random) {
+            sb.append("[\n");
+            while (sb.length() < TARGET_SIZE) {
+                sb.append("  {\"text\": \"");
+                appendWords(sb, random, 40);
+                sb.append("\", 'quoted': '");
+                appendWords(sb, random, 10);
+                sb.append(" \\'escaped\\'\\n\\ttab \\u00e9'},\n");
+            }
+            sb.append("]\n");
+        }
+    },
+
+    /**
+     * An array of records using unquoted, non-ASCII identifiers as keys and
+     * non-ASCII string values.
+     */
+    UNICODE_IDENTIFIERS {
+        @Override
+        void generate(StringBuilder sb, Random random) {
+            String[] keys = { "gr\u00f6\u00dfe", "\u540d\u524d", "\u043a\u043b\u044e\u0447", "valeur_\u00e9t\u00e9",
+                    "\u03c4\u03b9\u03bc\u03ae", "$donn\u00e9es", "_\uc778\ub371\uc2a4" };
+            String[] values = { "Gr\u00fc\u00dfe", "\u6771\u4eac\u90fd", "\u041c\u043e\u0441\u043a\u0432\u0430",
+                    "cr\u00e8me br\u00fbl\u00e9e", "\u03b1\u03b2\u03b3", "na\u00efve", "\uc11c\uc6b8" };
+            sb.append("[\n");
+            while (sb.length() < TARGET_SIZE) {
+                sb.append("  {");
+                for (int i = 0; i < keys.length; i++) {
+                    sb.append(keys[i]).append(": \"").append(values[random.nextInt(values.length)]).append("\", ");
+                }
+                sb.append("},\n");
+            }
+            sb.append("]\n");
+        }
+    };
+
+    private static final int TARGET_SIZE = 1024 * 1024;
+    private static final String[] WORDS = { "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing",
+            "elit", "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore", "magna" };
+
+    abstract void generate(StringBuilder sb, Random random);
+
+    /**
+     * Generate the source-text of this payload.
+     *
+     * @return the JSON5 document.
+     */
+    public String generate() {
+        StringBuilder sb = new StringBuilder();
+        generate(sb, new Random(ordinal()));
+        return sb.toString();
+    }
+
+    private static void appendWords(StringBuilder sb, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                sb.append(' ');
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.brimworks.json5.benchmarks;
+
+import com.brimworks.json5.JSON5Visitor;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Visitor which touches every value and folds it into a checksum so the JIT
+ * can not eliminate any of the parse work. Return {@link #reset()} from the
+ * benchmark method so JMH consumes the result.
+ */
+public class SinkVisitor implements JSON5Visitor {
+    private long checksum;
+
+    /**
+     * Obtain and clear the checksum accumulated since the last reset.
+     *
+     * @return the checksum
+     */
+    public long reset() {
+        long result = checksum;
+        checksum = 0;
+        return result;
+    }
+
+    /**
+     * Fold a value into the checksum.
+     *
+     * @param value to fold in
+     */
+    protected void fold(long value) {
+        checksum += value;
+    }
+
+    @Override
+    public Set<Interest> getInterests() {
+        return EnumSet.of(Interest.NUMBERS, Interest.STRINGS, Interest.KEYS);
+    }
+
+    @Override
+    public void visitNull(int line, long offset) {
+        checksum += 1;
+    }
+
+    @Override
+    public void visit(boolean val, int line, long offset) {
+        checksum += val ? 3 : 5;
+    }
+
+    @Override
+    public void visit(String val, int line, long offset) {
+        checksum += val.length();
+    }
+
+    @Override
+    public void visitKey(String key, int line, long offset) {
+        checksum += key.length();
+    }
+
+    @Override
+    public void visitNumber(BigInteger val, int line, long offset) {
+        checksum += val.hashCode();
+    }
+
+    @Override
+    public void visitNumber(BigDecimal val, int line, long offset) {
+        checksum += val.hashCode();
+    }
+
+    @Override
+    public void visitNumber(long val, int line, long offset) {
+        checksum += val;
+    }
+
+    @Override
+    public void visitNumber(double val, int line, long offset) {
+        checksum += Double.doubleToRawLongBits(val);
+    }
+
+    @Override
+    public void startObject(int line, long offset) {
+        checksum += 7;
+    }
+
+    @Override
+    public void startArray(int line, long offset) {
+        checksum += 11;
+    }
+}
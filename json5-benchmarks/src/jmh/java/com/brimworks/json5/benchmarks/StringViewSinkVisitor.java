@@ -0,0 +1,20 @@
+package com.brimworks.json5.benchmarks;
+
+import com.brimworks.json5.JSON5StringView;
+
+/**
+ * Variant of {@link SinkVisitor} which consumes strings and keys through the
+ * {@link JSON5StringView} callbacks, so no {@code String} is materialized for
+ * values.
+ */
+public class StringViewSinkVisitor extends SinkVisitor {
+    @Override
+    public void visit(JSON5StringView val, int line, long offset) {
+        fold(val.length());
+    }
+
+    @Override
+    public void visitKey(JSON5StringView key, int line, long offset) {
+        fold(key.length());
+    }
+}
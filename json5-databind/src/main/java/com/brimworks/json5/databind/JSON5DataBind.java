@@ -1,6 +1,6 @@
 package com.brimworks.json5.databind;
 
-import com.brimworks.json5.JSON5Parser;
+import com.brimworks.json5.JSON5ParserPool;
 import com.brimworks.json5.JSON5Location;
 import com.brimworks.json5.JSON5ParseError;
 import com.brimworks.databind.DataBind;
@@ -12,36 +12,38 @@ import java.io.IOException;
 
 public class JSON5DataBind {
     private DataBind dataBind;
+    private JSON5ParserPool pool;
 
     public JSON5DataBind(DataBind dataBind) {
+        this(dataBind, new JSON5ParserPool());
+    }
+
+    public JSON5DataBind(DataBind dataBind, JSON5ParserPool pool) {
         this.dataBind = dataBind;
+        this.pool = pool;
     }
 
     public <T> T parse(Path path, Class<T> type) throws IOException, JSON5ParseError, UnsupportedTypeError {
         JSON5TypeVisitor visitor = new JSON5TypeVisitor(dataBind, type);
-        JSON5Parser parser = new JSON5Parser(visitor);
-        parser.parse(path);
+        pool.parse(path, visitor);
         return (T)visitor.pop();
     }
 
     public <T> T parse(String str, String sourceName, Class<T> type) throws JSON5ParseError {
         JSON5TypeVisitor visitor = new JSON5TypeVisitor(dataBind, type);
-        JSON5Parser parser = new JSON5Parser(visitor);
-        parser.parse(str, sourceName);
+        pool.parse(str, sourceName, visitor);
         return (T)visitor.pop();
     }
 
     public <T> T parse(ByteBuffer utf8, String sourceName, Class<T> type) throws JSON5ParseError {
         JSON5TypeVisitor visitor = new JSON5TypeVisitor(dataBind, type);
-        JSON5Parser parser = new JSON5Parser(visitor);
-        parser.parse(utf8, sourceName);
+        pool.parse(utf8, sourceName, visitor);
         return (T)visitor.pop();
     }
 
     public <T> T parse(ReadableByteChannel in, String sourceName, JSON5Location.Read readSource, Class<T> type) throws IOException, JSON5ParseError {
         JSON5TypeVisitor visitor = new JSON5TypeVisitor(dataBind, type);
-        JSON5Parser parser = new JSON5Parser(visitor);
-        parser.parse(in, sourceName, readSource);
+        pool.parse(in, sourceName, readSource, visitor);
         return (T)visitor.pop();
     }
 }
\ No newline at end of file
@@ -12,6 +12,8 @@ import java.math.BigDecimal;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Set;
 
 
 public class JSON5TypeVisitor implements JSON5Visitor {
@@ -48,6 +50,11 @@ public class JSON5TypeVisitor implements JSON5Visitor {
         return frame.visitor;
     }
 
+    @Override
+    public Set<Interest> getInterests() {
+        return EnumSet.of(Interest.NUMBERS, Interest.STRINGS, Interest.KEYS);
+    }
+
     @Override
     public void visitNull(int line, long offset) {
         get().visit(null);
@@ -1,15 +1,17 @@
 package com.brimworks.json5;
 
 public class JSON5Key {
-    private String key;
-    private int index;
+    private final String key;
+    private final int index;
     public JSON5Key(String key) {
         if ( null == key ) {
             throw new NullPointerException("Attempt to construct a null path element");
         }
         this.key = key;
+        this.index = 0;
     }
     public JSON5Key(int index) {
+        this.key = null;
         this.index = index;
     }
     public String asKey() {
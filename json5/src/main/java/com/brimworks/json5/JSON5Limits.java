@@ -0,0 +1,124 @@
+package com.brimworks.json5;
+
+import com.brimworks.json5.ragel.Ragel;
+
+/**
+ * Bounds on the input accepted by a {@link JSON5Parser}, so hostile input fails
+ * fast with a {@link JSON5ParseError} (located where the limit was exceeded)
+ * instead of exhausting memory. Every limit is unlimited by default:
+ *
+ * <pre>
+ * parser.setLimits(new JSON5Limits()
+ *     .setMaxDocumentBytes(16 * 1024 * 1024)
+ *     .setMaxStringChars(1024 * 1024)
+ *     .setMaxDepth(256));
+ * </pre>
+ *
+ * The limits are read at the start of every parse, so changes only affect
+ * subsequent parses. Limits may be shared by multiple parsers, but should not be
+ * modified while they are in use.
+ */
+public final class JSON5Limits {
+    private int maxTokenBytes = Integer.MAX_VALUE;
+    private int maxStringChars = Integer.MAX_VALUE;
+    private int maxDepth = Integer.MAX_VALUE;
+    private long maxDocumentBytes = Long.MAX_VALUE;
+    private int maxNumberDigits = Integer.MAX_VALUE;
+
+    /**
+     * Limit the bytes of a single token which spans chunks of input, and so must
+     * be buffered until it is complete. This bounds the buffers of a parse from a
+     * channel, {@link JSON5Parser#feed(ByteBuffer)} and the {@link JSON5Reader}. In-memory input is never buffered, so is bounded
+     * by {@link #setMaxDocumentBytes(long)} instead.
+     *
+     * @param maxTokenBytes maximum size in bytes.
+     * @return this
+     */
+    public JSON5Limits setMaxTokenBytes(int maxTokenBytes) {
+        this.maxTokenBytes = positive("maxTokenBytes", maxTokenBytes);
+        return this;
+    }
+
+    public int getMaxTokenBytes() {
+        return maxTokenBytes;
+    }
+
+    /**
+     * Limit the length of strings (including identifiers used as object keys),
+     * checked as the string is accumulated.
+     *
+     * @param maxStringChars maximum length in UTF-16 chars, after escape
+     *                       sequences are decoded.
+     * @return this
+     */
+    public JSON5Limits setMaxStringChars(int maxStringChars) {
+        this.maxStringChars = positive("maxStringChars", maxStringChars);
+        return this;
+    }
+
+    public int getMaxStringChars() {
+        return maxStringChars;
+    }
+
+    /**
+     * Limit the nesting of objects and arrays.
+     *
+     * @param maxDepth maximum number of containers which may be open at once.
+     * @return this
+     */
+    public JSON5Limits setMaxDepth(int maxDepth) {
+        this.maxDepth = positive("maxDepth", maxDepth);
+        return this;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Limit the total size of the input of a parse, which for multiple documents
+     * (see {@link JSON5Parser#setMultiDocument(boolean)}) is the whole stream.
+     *
+     * @param maxDocumentBytes maximum size in bytes.
+     * @return this
+     */
+    public JSON5Limits setMaxDocumentBytes(long maxDocumentBytes) {
+        if (maxDocumentBytes <= 0)
+            throw new IllegalArgumentException("Expected positive maxDocumentBytes, got " + maxDocumentBytes);
+        this.maxDocumentBytes = maxDocumentBytes;
+        return this;
+    }
+
+    public long getMaxDocumentBytes() {
+        return maxDocumentBytes;
+    }
+
+    /**
+     * Limit the digits of a number (excluding its exponent), which bounds the
+     * cost of converting it to a {@code BigInteger} or {@code BigDecimal}.
+     *
+     * @param maxNumberDigits maximum number of digits.
+     * @return this
+     */
+    public JSON5Limits setMaxNumberDigits(int maxNumberDigits) {
+        this.maxNumberDigits = positive("maxNumberDigits", maxNumberDigits);
+        return this;
+    }
+
+    public int getMaxNumberDigits() {
+        return maxNumberDigits;
+    }
+
+    /**
+     * Configure the limits enforced by a lexer.
+     */
+    void applyTo(Ragel lexer) {
+        lexer.setLimits(maxTokenBytes, maxStringChars, maxNumberDigits, maxDocumentBytes);
+    }
+
+    private static int positive(String name, int value) {
+        if (value <= 0)
+            throw new IllegalArgumentException("Expected positive " + name + ", got " + value);
+        return value;
+    }
+}
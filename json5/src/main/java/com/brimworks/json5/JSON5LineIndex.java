@@ -0,0 +1,76 @@
+package com.brimworks.json5;
+
+import java.util.Arrays;
+
+/**
+ * The byte offset of the start of every line of the input, recorded while
+ * lexing when set via {@link JSON5Parser#setLineIndex(JSON5LineIndex)}. This
+ * allows jumping directly to a line, and is used when rendering the context
+ * line of a {@link JSON5Location} so the source does not need to be scanned for
+ * newlines.
+ *
+ * An index is cleared when the next parse begins, so it should not be shared
+ * between parsers.
+ */
+public final class JSON5LineIndex {
+    // starts[n] is the offset of line n + 1:
+    private long[] starts = new long[64];
+    private int count = 1;
+
+    /**
+     * Forget all lines, leaving only the first line at offset zero.
+     */
+    void clear() {
+        count = 1;
+    }
+
+    /**
+     * Record the start of the next line.
+     */
+    void add(long offset) {
+        if (count == starts.length)
+            starts = Arrays.copyOf(starts, 2 * count);
+        starts[count++] = offset;
+    }
+
+    /**
+     * @return the number of lines seen so far.
+     */
+    public int getLineCount() {
+        return count;
+    }
+
+    /**
+     * @param lineNumber the line number, starting at 1.
+     * @return the byte offset of the first byte of the line.
+     * @throws IndexOutOfBoundsException if the line has not been seen.
+     */
+    public long getLineStart(int lineNumber) {
+        if (lineNumber < 1 || lineNumber > count)
+            throw new IndexOutOfBoundsException("Line " + lineNumber + " is not within [1, " + count + "]");
+        return starts[lineNumber - 1];
+    }
+
+    /**
+     * Find the line which contains a byte offset.
+     *
+     * @param byteOffset offset from the beginning of the input.
+     * @return the line number, starting at 1.
+     */
+    public int getLineNumber(long byteOffset) {
+        if (byteOffset < 0)
+            throw new IndexOutOfBoundsException("byteOffset must not be negative");
+        // Index of the last line start which is <= byteOffset:
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= byteOffset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low + 1;
+    }
+}
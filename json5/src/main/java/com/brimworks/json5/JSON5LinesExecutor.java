@@ -0,0 +1,255 @@
+package com.brimworks.json5;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Parses a stream of JSON5 Lines (a document per line) on multiple threads. The
+ * input is read in batches of whole records, and each batch is parsed by a pooled
+ * {@link JSON5Parser} in multi-document mode, so the visitor of the batch is
+ * called with {@link JSON5Visitor#endDocument(int, long)} after every record.
+ * Lines and offsets are relative to the whole stream.
+ *
+ * At most {@code workers} batches are parsed at once, and the buffers of
+ * completed batches are reused for reading, so memory is bounded by the batch
+ * size (or the longest line if larger). The visitor of each batch is passed to
+ * a consumer on the calling thread, in the order of the input unless
+ * {@link #setOrdered(boolean)} is false.
+ *
+ * A record may span lines (for example if it is pretty printed, or contains a
+ * block comment or a string with a line continuation), since batches are only
+ * split at a LF which is outside of any string, comment, object or array, as
+ * found by a {@link JSON5StructuralIndex}. So an object or array which is never
+ * closed is read up to the end of the input before it fails to parse.
+ *
+ * An executor may be used by multiple threads.
+ */
+public final class JSON5LinesExecutor {
+    private final JSON5ParserPool parsers;
+    private final ExecutorService executor;
+    private final int workers;
+    private volatile int batchSize = 1024 * 1024;
+    private volatile boolean ordered = true;
+
+    /**
+     * A batch of lines and the visitor which parsed it.
+     */
+    private static final class Batch<V> {
+        private final ByteBuffer buffer;
+        private V visitor;
+
+        private Batch(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Create an executor which uses the common fork join pool, with a worker per
+     * thread of the pool.
+     */
+    public JSON5LinesExecutor() {
+        this(new JSON5ParserPool(), ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Create an executor.
+     *
+     * @param parsers  pool of parsers used by the workers.
+     * @param executor runs the workers.
+     * @param workers  maximum number of batches parsed at once.
+     */
+    public JSON5LinesExecutor(JSON5ParserPool parsers, ExecutorService executor, int workers) {
+        if (null == parsers)
+            throw new NullPointerException("Expected JSON5ParserPool to be non-null");
+        if (null == executor)
+            throw new NullPointerException("Expected ExecutorService to be non-null");
+        if (workers <= 0)
+            throw new IllegalArgumentException("Expected positive workers, got " + workers);
+        this.parsers = parsers;
+        this.executor = executor;
+        this.workers = workers;
+    }
+
+    /**
+     * Set the number of bytes read into each batch, a batch is smaller if it
+     * would otherwise end within a record, or larger if a single record does not
+     * fit.
+     *
+     * @param batchSize size in bytes, 1 MB by default.
+     * @return this
+     */
+    public JSON5LinesExecutor setBatchSize(int batchSize) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("Expected positive batchSize, got " + batchSize);
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param ordered true (the default) to consume the visitors in the order of
+     *                the input, false to consume them as soon as their batch is
+     *                parsed.
+     * @return this
+     */
+    public JSON5LinesExecutor setOrdered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Parse all records of a stream.
+     *
+     * @param <V>        type of visitor.
+     * @param in         required ReadableByteChannel, which is not closed.
+     * @param sourceName name of source location used in errors.
+     * @param visitors   creates a visitor per batch, called by the workers.
+     * @param results    consumes the visitor of each batch once it is parsed,
+     *                   called on this thread.
+     * @throws IOException           if {@code in} encounters an error reading.
+     * @throws JSON5ParseError       if a record does not conform to JSON5, the
+     *                               visitors of the batches before it have been
+     *                               consumed if ordered.
+     * @throws CancellationException if interrupted while waiting for a worker.
+     */
+    public <V extends JSON5Visitor> void parse(ReadableByteChannel in, String sourceName, Supplier<V> visitors,
+            Consumer<? super V> results) throws IOException, JSON5ParseError {
+        if (null == in)
+            throw new NullPointerException("Expected ReadableByteChannel to be non-null");
+        int batchSize = this.batchSize;
+        boolean ordered = this.ordered;
+        Deque<ByteBuffer> free = new ArrayDeque<>();
+        Deque<Future<Batch<V>>> inFlight = new ArrayDeque<>();
+        CompletionService<Batch<V>> completed = ordered ? null : new ExecutorCompletionService<>(executor);
+        JSON5StructuralIndex index = new JSON5StructuralIndex();
+        ByteBuffer carry = ByteBuffer.allocate(0);
+        int line = 1;
+        long offset = 0;
+        boolean eof = false;
+        try {
+            while (!eof) {
+                // Begin with the partial record left over from the last batch:
+                ByteBuffer buffer = free.pollLast();
+                if (null == buffer || buffer.capacity() <= carry.remaining())
+                    buffer = ByteBuffer.allocate(Math.max(batchSize, 2 * carry.remaining()));
+                buffer.clear();
+                buffer.put(carry);
+                int end;
+                while (true) {
+                    while (buffer.hasRemaining()) {
+                        if (in.read(buffer) < 0) {
+                            eof = true;
+                            break;
+                        }
+                    }
+                    end = eof ? buffer.position() : lastRecordEnd(buffer, index);
+                    if (eof || end > 0)
+                        break;
+                    // The record does not fit:
+                    ByteBuffer larger = ByteBuffer.allocate(2 * buffer.capacity());
+                    buffer.flip();
+                    buffer = larger.put(buffer);
+                }
+                carry = buffer.duplicate();
+                carry.limit(buffer.position()).position(end);
+                buffer.position(0).limit(end);
+                if (!buffer.hasRemaining())
+                    break;
+
+                while (inFlight.size() >= workers) {
+                    complete(ordered ? inFlight.peekFirst() : completed.take(), inFlight, free, results);
+                }
+                Batch<V> batch = new Batch<>(buffer);
+                int batchLine = line;
+                long batchOffset = offset;
+                Callable<Batch<V>> task = () -> {
+                    V visitor = visitors.get();
+                    JSON5Parser parser = parsers.acquire();
+                    try {
+                        parser.setVisitor(visitor).setMultiDocument(true).parse(batch.buffer.duplicate(), batchLine,
+                                batchOffset, sourceName);
+                    } finally {
+                        parsers.release(parser);
+                    }
+                    batch.visitor = visitor;
+                    return batch;
+                };
+                inFlight.addLast(ordered ? executor.submit(task) : completed.submit(task));
+                // Lines of the last batch are never needed:
+                if (!eof)
+                    line += index.getLineEndCount();
+                offset += end;
+            }
+            while (!inFlight.isEmpty()) {
+                complete(ordered ? inFlight.peekFirst() : completed.take(), inFlight, free, results);
+            }
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            CancellationException cancel = new CancellationException("Interrupted while parsing");
+            cancel.initCause(err);
+            throw cancel;
+        } finally {
+            for (Future<Batch<V>> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Wait for a batch to be parsed, consume its visitor and recycle its buffer.
+     */
+    private <V> void complete(Future<Batch<V>> future, Deque<Future<Batch<V>>> inFlight, Deque<ByteBuffer> free,
+            Consumer<? super V> results) throws InterruptedException {
+        Batch<V> batch;
+        try {
+            batch = future.get();
+        } catch (ExecutionException err) {
+            Throwable cause = err.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+        inFlight.remove(future);
+        free.addLast(batch.buffer);
+        results.accept(batch.visitor);
+    }
+
+    /**
+     * @return the offset after the last LF read into the buffer which separates
+     *         records, or 0 if there is none. The buffer always begins with a
+     *         record. The index is left with the lines before that offset.
+     */
+    private static int lastRecordEnd(ByteBuffer buffer, JSON5StructuralIndex index) {
+        // Only examine the bytes which were read:
+        ByteBuffer data = buffer.duplicate();
+        data.flip();
+        return index.scanLines(data, 0, data.limit()).getLineEnd();
+    }
+
+}
@@ -12,6 +12,9 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class JSON5Location {
     private static final int MAX_LINE_LEN = 5 * 1024;
+    // Bytes read past the location when the start of the line is known, the
+    // buffer grows if the end of the line is further:
+    private static final int LINE_TAIL_LEN = 128;
     private static Logger log = Logger.getLogger("" + JSON5Location.class);
 
     @FunctionalInterface
@@ -28,25 +31,36 @@ public class JSON5Location {
     }
 
     private long byteOffset;
+    // Offset of the start of the line, -1 if unknown:
+    private long lineStart;
     private int lineNumber;
     private String sourceName;
     private List<JSON5Key> path;
     private Read readSource;
-    private String contextLine;
+    // Computed on demand, racing threads compute the same values and the offset
+    // is written before the volatile line which publishes it:
+    private volatile String contextLine;
     private int contextLineOffset = -1;
-    private StackTraceElement[] constructedAt;
+    // The stack trace is only materialized if it is logged:
+    private Throwable constructedAt;
 
     public JSON5Location(int lineNumber, long byteOffset, String sourceName, List<JSON5Key> path, Read readSource) {
+        this(lineNumber, byteOffset, -1, sourceName, path, readSource);
+    }
+
+    JSON5Location(int lineNumber, long byteOffset, long lineStart, String sourceName, List<JSON5Key> path,
+            Read readSource) {
         if (null == path)
             throw new NullPointerException("Expected path to be non null");
         if (byteOffset < 0)
             throw new IndexOutOfBoundsException("byteOffset must be greater than zero");
         this.byteOffset = byteOffset;
+        this.lineStart = lineStart <= byteOffset && byteOffset - lineStart < MAX_LINE_LEN ? lineStart : -1;
         this.lineNumber = lineNumber;
         this.sourceName = sourceName;
         this.path = path;
         this.readSource = readSource;
-        this.constructedAt = Thread.currentThread().getStackTrace();
+        this.constructedAt = new Throwable();
     }
 
     public long getByteOffset() {
@@ -71,18 +85,41 @@ public class JSON5Location {
      * 
      * @return the context line
      */
-    public synchronized String getContextLine() {
+    public String getContextLine() {
+        String contextLine = this.contextLine;
+        Read readSource = this.readSource;
         if (null != contextLine || null == readSource)
             return contextLine;
-        byte[] contextBytes = new byte[MAX_LINE_LEN];
+        byte[] contextBytes;
         int contextBytesLen = 0;
         int contextOffset = MAX_LINE_LEN / 2;
         try {
-            if (byteOffset < contextOffset) {
-                contextOffset = (int) byteOffset;
-                contextBytesLen = readSource.read(ByteBuffer.wrap(contextBytes), 0);
+            if (lineStart >= 0) {
+                // Read forward from the start of the line, only as far as its end:
+                contextOffset = (int) (byteOffset - lineStart);
+                contextBytes = new byte[Math.min(contextOffset + LINE_TAIL_LEN, MAX_LINE_LEN)];
+                contextBytesLen = readSource.read(ByteBuffer.wrap(contextBytes), lineStart);
+                int lineEnds = lineEnd(contextBytes, contextOffset, contextBytesLen);
+                while (lineEnds == contextBytes.length && lineEnds < MAX_LINE_LEN) {
+                    // The buffer filled up before the end of the line:
+                    contextBytes = Arrays.copyOf(contextBytes, Math.min(2 * lineEnds, MAX_LINE_LEN));
+                    int len = readSource.read(
+                            ByteBuffer.wrap(contextBytes, contextBytesLen, contextBytes.length - contextBytesLen),
+                            lineStart + contextBytesLen);
+                    if (len <= 0)
+                        break;
+                    contextBytesLen += len;
+                    // A LS or PS may straddle the two reads:
+                    lineEnds = lineEnd(contextBytes, Math.max(contextOffset, lineEnds - 2), contextBytesLen);
+                }
             } else {
-                contextBytesLen = readSource.read(ByteBuffer.wrap(contextBytes), byteOffset - contextOffset);
+                contextBytes = new byte[MAX_LINE_LEN];
+                if (byteOffset < contextOffset) {
+                    contextOffset = (int) byteOffset;
+                    contextBytesLen = readSource.read(ByteBuffer.wrap(contextBytes), 0);
+                } else {
+                    contextBytesLen = readSource.read(ByteBuffer.wrap(contextBytes), byteOffset - contextOffset);
+                }
             }
         } catch (IOException ex) {
             throw new UncheckedIOException(ex);
@@ -92,19 +129,17 @@ public class JSON5Location {
                     + contextOffset + ", but got length=" + contextBytesLen;
             Throwable ex = new Throwable(msg, null, false, true) {
             };
-            ex.setStackTrace(constructedAt);
+            ex.setStackTrace(constructedAt.getStackTrace());
             log.log(Level.WARNING, msg, ex);
-            readSource = null;
+            this.readSource = null;
             return null;
         }
-        int lineBegins = contextOffset;
+        int lineBegins = lineStart >= 0 ? 0 : contextOffset;
         while (lineBegins > 0 && !isNewline(contextBytes, lineBegins - 1, contextBytesLen))
             lineBegins--;
-        int lineEnds = contextOffset;
-        while (lineEnds < contextBytesLen && !isNewline(contextBytes, lineEnds, contextBytesLen))
-            lineEnds++;
+        int lineEnds = lineEnd(contextBytes, contextOffset, contextBytesLen);
         contextLine = new String(contextBytes, lineBegins, lineEnds - lineBegins, UTF_8);
-        contextLineOffset = contextOffset - lineBegins;
+        int contextLineOffset = contextOffset - lineBegins;
         // Now adjust contextLineOffset for UTF-8 char sizes vs UTF-16:
         for (int idx = 0; idx < contextLineOffset; idx++) {
             int ch = contextLine.codePointAt(idx);
@@ -120,6 +155,8 @@ public class JSON5Location {
                 contextLineOffset -= 2;
             }
         }
+        this.contextLineOffset = contextLineOffset;
+        this.contextLine = contextLine;
         return contextLine;
     }
 
@@ -170,6 +207,13 @@ public class JSON5Location {
         return sb.toString();
     }
 
+    // Position of the first newline at or after from, or limit if there is none:
+    private static int lineEnd(byte[] bytes, int from, int limit) {
+        while (from < limit && !isNewline(bytes, from, limit))
+            from++;
+        return from;
+    }
+
     // Is this a UTF-8 newline?
     private static boolean isNewline(byte[] bytes, int position, int limit) {
         switch (bytes[position] & 0xFF) {
@@ -180,7 +224,7 @@ public class JSON5Location {
                 if (limit - position < 3)
                     return false;
                 // Handle LS & PS
-                return bytes[position + 1] == 0x80 && (bytes[position + 2] & 0xFE) == 0xA8;
+                return (bytes[position + 1] & 0xFF) == 0x80 && (bytes[position + 2] & 0xFE) == 0xA8;
         }
         return false;
     }
@@ -0,0 +1,242 @@
+package com.brimworks.json5;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable view of a number passed to
+ * {@link JSON5Visitor#visitNumber(JSON5NumberView, int, long)}. The number is
+ * classified while lexing, but is only converted when one of the
+ * {@code *Value()} methods is called, so visitors which pass numbers through (or
+ * skip them) never pay for the conversion. The view is only valid for the
+ * duration of the visitor call, since the parser reuses it for the next number.
+ */
+public final class JSON5NumberView {
+    /**
+     * Classification of a number, which determines the {@code visitNumber()}
+     * method called by default.
+     */
+    public enum Kind {
+        /**
+         * An integer (no decimal, no exponent) which fits in a long.
+         */
+        LONG,
+        /**
+         * A decimal (decimal or exponent was specified) which is represented by a
+         * double.
+         */
+        DOUBLE,
+        /**
+         * An integer which does not fit in a long.
+         */
+        BIG_INTEGER,
+        /**
+         * A decimal which can not be represented by a double.
+         */
+        BIG_DECIMAL,
+        /**
+         * NaN or Infinity.
+         */
+        SPECIAL
+    }
+
+    // Null if detached from the lexer, in which case the value was converted:
+    private final JSON5Lexer lexer;
+    private Kind kind;
+    private ByteBuffer data;
+    private int begin;
+    private int end;
+    // Value of a detached view, a long or the bits of a double:
+    private long bits;
+    // Value of a detached view which is a BigInteger or BigDecimal:
+    private Number exact;
+
+    JSON5NumberView(JSON5Lexer lexer) {
+        this.lexer = lexer;
+    }
+
+    /**
+     * Create a view which is detached from the lexer, see
+     * {@link #set(Kind, ByteBuffer, int, int, long, Number)}.
+     */
+    JSON5NumberView() {
+        this(null);
+    }
+
+    /**
+     * View the number token in data between begin (inclusive) and end
+     * (exclusive).
+     */
+    void set(Kind kind, ByteBuffer data, int begin, int end) {
+        this.kind = kind;
+        this.data = data;
+        this.begin = begin;
+        this.end = end;
+    }
+
+    /**
+     * View a number which was converted when it was lexed, so the lexer may have
+     * moved on.
+     *
+     * @param bits  the long value, or the bits of the double value (for DOUBLE
+     *              and SPECIAL).
+     * @param exact the value for BIG_INTEGER and BIG_DECIMAL.
+     */
+    void set(Kind kind, ByteBuffer data, int begin, int end, long bits, Number exact) {
+        set(kind, data, begin, end);
+        this.bits = bits;
+        this.exact = exact;
+    }
+
+    /**
+     * Invalidate the view, dropping any reference to the input.
+     */
+    void clear() {
+        set(null, null, 0, 0, 0, null);
+    }
+
+    ByteBuffer getRawData() {
+        return data;
+    }
+
+    int getRawBegin() {
+        return begin;
+    }
+
+    int getRawEnd() {
+        return end;
+    }
+
+    /**
+     * @return the classification of this number.
+     */
+    public Kind getKind() {
+        checkValid();
+        return kind;
+    }
+
+    /**
+     * @return the number as a long, which is exact if the kind is
+     *         {@link Kind#LONG}, otherwise equivalent to
+     *         {@code toNumber().longValue()}.
+     */
+    public long longValue() {
+        checkValid();
+        if (Kind.LONG == kind)
+            return null == lexer ? bits : lexer.getNumberLong();
+        return toNumber().longValue();
+    }
+
+    /**
+     * @return the number rounded to the nearest double.
+     */
+    public double doubleValue() {
+        checkValid();
+        if (null != lexer)
+            return lexer.getNumberDouble();
+        switch (kind) {
+        case LONG:
+            return bits;
+        case BIG_INTEGER:
+        case BIG_DECIMAL:
+            return exact.doubleValue();
+        default:
+            return Double.longBitsToDouble(bits);
+        }
+    }
+
+    /**
+     * @return the number with any fractional part discarded.
+     * @throws NumberFormatException if the number is NaN or Infinity.
+     */
+    public BigInteger bigIntegerValue() {
+        checkValid();
+        if (null != lexer)
+            return lexer.getNumberBigInteger();
+        switch (kind) {
+        case LONG:
+            return BigInteger.valueOf(bits);
+        case BIG_INTEGER:
+            return (BigInteger) exact;
+        default:
+            return bigDecimalValue().toBigInteger();
+        }
+    }
+
+    /**
+     * @return the exact value of the number.
+     * @throws NumberFormatException if the number is NaN or Infinity.
+     */
+    public BigDecimal bigDecimalValue() {
+        checkValid();
+        if (null != lexer)
+            return lexer.getNumberBigDecimal();
+        switch (kind) {
+        case LONG:
+            return BigDecimal.valueOf(bits);
+        case BIG_INTEGER:
+            return new BigDecimal((BigInteger) exact);
+        case BIG_DECIMAL:
+            return (BigDecimal) exact;
+        case SPECIAL:
+            throw new NumberFormatException("Not a finite number: " + toString());
+        default:
+            // Decimals are never hexadecimal, so the syntax is a subset of BigDecimal:
+            return new BigDecimal(toString());
+        }
+    }
+
+    /**
+     * Materialize the number as the {@code visitNumber()} methods would receive
+     * it.
+     *
+     * @return a {@code Long}, {@code Double}, {@code BigInteger} or
+     *         {@code BigDecimal} depending on the kind of number.
+     */
+    public Number toNumber() {
+        switch (getKind()) {
+        case LONG:
+            return Long.valueOf(longValue());
+        case BIG_INTEGER:
+            return bigIntegerValue();
+        case BIG_DECIMAL:
+            return bigDecimalValue();
+        default:
+            return Double.valueOf(doubleValue());
+        }
+    }
+
+    /**
+     * Obtain the raw input of this number, which is JSON5 syntax so it may have a
+     * leading "+", a leading or trailing ".", be hexadecimal, NaN or Infinity.
+     *
+     * @return a read-only buffer with the ASCII bytes of this number between
+     *         position and limit.
+     */
+    public ByteBuffer getRawUTF8() {
+        checkValid();
+        ByteBuffer slice = data.duplicate();
+        slice.limit(end);
+        slice.position(begin);
+        return slice.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the number exactly as found in the input.
+     */
+    @Override
+    public String toString() {
+        checkValid();
+        char[] chars = new char[end - begin];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (data.get(begin + i) & 0xff);
+        }
+        return new String(chars);
+    }
+
+    private void checkValid() {
+        if (null == kind)
+            throw new IllegalStateException("JSON5NumberView used outside of visitNumber()");
+    }
+}
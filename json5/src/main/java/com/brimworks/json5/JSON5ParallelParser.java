@@ -0,0 +1,398 @@
+package com.brimworks.json5;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.brimworks.json5.JSON5StructuralIndex.LINE_COMMENT;
+import static com.brimworks.json5.JSON5StructuralIndex.STRUCTURE;
+
+/**
+ * Parses the elements of a document whose root is an array on multiple threads.
+ * The input is split into chunks, which are scanned concurrently for the
+ * boundaries of the elements, each chunk speculating that it begins outside of
+ * any string or comment (chunks are aligned to newlines to make this likely).
+ * Chunks where the speculation was wrong are scanned again. The elements are
+ * then parsed concurrently by pooled {@link JSON5Parser}s.
+ *
+ * Visitors are called as if the whole document was parsed, with the same
+ * lines, offsets and indices, except that the root array and the end of stream
+ * are not visited. By default each run of consecutive elements is visited by
+ * its own visitor, and the visitors are returned in the order of the elements.
+ * If the order does not matter, {@link #setOrdered(boolean)} to false uses one
+ * visitor per thread instead.
+ *
+ * If the document does not conform to JSON5, it is validated again by a single
+ * parser so the {@link JSON5ParseError} is identical to the one thrown by
+ * {@link JSON5Parser#parse(ByteBuffer, String)}. Visitors may have seen some of
+ * the elements by then.
+ *
+ * A parallel parser may be used by multiple threads.
+ */
+public final class JSON5ParallelParser {
+    // Maximum distance to search for a newline to align a chunk with:
+    private static final int MAX_ALIGN = 4096;
+
+    private final JSON5ParserPool parsers;
+    private final ExecutorService executor;
+    private volatile int chunkSize = 1024 * 1024;
+    private volatile boolean ordered = true;
+
+    /**
+     * A range of the input which is scanned by one task, and the elements which
+     * begin within it.
+     */
+    private static final class Chunk {
+        private final int begin;
+        private final int end;
+        private final JSON5StructuralIndex index = new JSON5StructuralIndex();
+        // Depth of the first structural character, and the change in depth:
+        private int startDepth;
+        private int depthChange;
+        private int startLine;
+        // Offsets and lines of the '[', ',' and ']' of the root array:
+        private int[] separators = new int[16];
+        private int[] separatorLines = new int[16];
+        private int separatorCount;
+
+        private Chunk(int begin, int end) {
+            this.begin = begin;
+            this.end = end;
+        }
+
+        private void addSeparator(int offset, int line) {
+            if (separatorCount == separators.length) {
+                separators = Arrays.copyOf(separators, 2 * separatorCount);
+                separatorLines = Arrays.copyOf(separatorLines, 2 * separatorCount);
+            }
+            separators[separatorCount] = offset;
+            separatorLines[separatorCount++] = line;
+        }
+    }
+
+    /**
+     * Create a parallel parser which uses the common fork join pool.
+     */
+    public JSON5ParallelParser() {
+        this(new JSON5ParserPool(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a parallel parser.
+     *
+     * @param parsers  pool of parsers used by the tasks.
+     * @param executor runs the tasks.
+     */
+    public JSON5ParallelParser(JSON5ParserPool parsers, ExecutorService executor) {
+        if (null == parsers)
+            throw new NullPointerException("Expected JSON5ParserPool to be non-null");
+        if (null == executor)
+            throw new NullPointerException("Expected ExecutorService to be non-null");
+        this.parsers = parsers;
+        this.executor = executor;
+    }
+
+    /**
+     * Set the size of the chunks the input is split into, which is also
+     * (approximately) the size of the runs of elements visited by each visitor.
+     *
+     * @param chunkSize size in bytes, 1 MB by default.
+     * @return this
+     */
+    public JSON5ParallelParser setChunkSize(int chunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Expected positive chunkSize, got " + chunkSize);
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @param ordered true (the default) for a visitor per run of consecutive
+     *                elements returned in order, false for a visitor per thread.
+     * @return this
+     */
+    public JSON5ParallelParser setOrdered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * Parse a JSON5 document whose root is an array.
+     *
+     * @param <V>        type of visitor.
+     * @param utf8       utf8 encoded byte buffer, the position is not modified.
+     * @param sourceName name of source location used in errors.
+     * @param visitors   creates the visitors, called by the threads which parse.
+     * @return the visitors, in the order of the elements they visited if ordered.
+     * @throws JSON5ParseError          if source-text does not conform to JSON5.
+     * @throws IllegalArgumentException if the root of the document is not an
+     *                                  array.
+     */
+    public <V extends JSON5Visitor> List<V> parseArray(ByteBuffer utf8, String sourceName, Supplier<V> visitors)
+            throws JSON5ParseError {
+        ByteBuffer data = utf8.duplicate();
+        List<Chunk> chunks = split(data);
+
+        // Speculate that every chunk begins outside of any string or comment:
+        invokeAll(chunks, chunk -> chunk.index.scan(data, chunk.begin, chunk.end, STRUCTURE, true));
+        for (int i = 1; i < chunks.size(); i++) {
+            JSON5StructuralIndex previous = chunks.get(i - 1).index;
+            Chunk chunk = chunks.get(i);
+            if (previous.getStop() != chunk.begin || STRUCTURE != previous.getMode()) {
+                // Mis-speculated, continue from where the previous chunk stopped:
+                chunk.index.scan(data, previous.getStop(), chunk.end, previous.getMode(), true);
+            }
+        }
+        int mode = chunks.get(chunks.size() - 1).index.getMode();
+        if (STRUCTURE != mode && LINE_COMMENT != mode)
+            throw invalid(data, sourceName, null);
+
+        invokeAll(chunks, chunk -> {
+            for (int i = 0; i < chunk.index.size(); i++) {
+                switch (data.get(chunk.index.getOffset(i))) {
+                case '[':
+                case '{':
+                    chunk.depthChange++;
+                    break;
+                case ']':
+                case '}':
+                    chunk.depthChange--;
+                    break;
+                }
+            }
+        });
+        int depth = 0;
+        int line = 1;
+        for (Chunk chunk : chunks) {
+            chunk.startDepth = depth;
+            chunk.startLine = line;
+            depth += chunk.depthChange;
+            line += chunk.index.getLineCount();
+        }
+        invokeAll(chunks, chunk -> findSeparators(data, chunk));
+
+        int separatorCount = 0;
+        for (Chunk chunk : chunks) {
+            separatorCount += chunk.separatorCount;
+        }
+        int[] separators = new int[separatorCount];
+        int[] separatorLines = new int[separatorCount];
+        int[] firstSeparators = new int[chunks.size()];
+        separatorCount = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            firstSeparators[i] = separatorCount;
+            System.arraycopy(chunk.separators, 0, separators, separatorCount, chunk.separatorCount);
+            System.arraycopy(chunk.separatorLines, 0, separatorLines, separatorCount, chunk.separatorCount);
+            separatorCount += chunk.separatorCount;
+        }
+        // The root array must be the only value:
+        if (separatorCount < 2 || '[' != data.get(separators[0]) || ']' != data.get(separators[separatorCount - 1]))
+            throw invalid(data, sourceName, null);
+        for (int i = 1; i < separatorCount - 1; i++) {
+            if (',' != data.get(separators[i]))
+                throw invalid(data, sourceName, null);
+        }
+        validateTrivia(data, separators[0], separators[separatorCount - 1], sourceName);
+
+        // Each task parses the elements which begin within a chunk:
+        Map<Object, V> visitorMap = new ConcurrentHashMap<>();
+        List<V> taskVisitors = new ArrayList<>();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        boolean ordered = this.ordered;
+        for (int i = 0; i < chunks.size(); i++) {
+            int first = firstSeparators[i];
+            int next = Math.min(first + chunks.get(i).separatorCount, separatorCount - 1);
+            if (first >= next)
+                continue;
+            boolean last = next == separatorCount - 1;
+            int taskIndex = taskVisitors.size();
+            taskVisitors.add(null);
+            tasks.add(() -> {
+                V visitor;
+                if (ordered) {
+                    visitor = visitors.get();
+                    taskVisitors.set(taskIndex, visitor);
+                } else {
+                    visitor = visitorMap.computeIfAbsent(Thread.currentThread(), thread -> visitors.get());
+                }
+                JSON5Parser parser = parsers.acquire();
+                try {
+                    parser.setVisitor(visitor).parseElements(data, separators[first] + 1, separators[next],
+                            separatorLines[first], first, last, sourceName);
+                } finally {
+                    parsers.release(parser);
+                }
+                return null;
+            });
+        }
+        try {
+            invokeAll(tasks);
+        } catch (JSON5ParseError err) {
+            throw invalid(data, sourceName, err);
+        }
+        return ordered ? taskVisitors : new ArrayList<>(visitorMap.values());
+    }
+
+    /**
+     * Split the input into chunks, aligned to the byte after a newline (if there
+     * is one nearby).
+     */
+    private List<Chunk> split(ByteBuffer data) {
+        int chunkSize = this.chunkSize;
+        int limit = data.limit();
+        List<Chunk> chunks = new ArrayList<>();
+        int begin = data.position();
+        do {
+            int end = limit - begin <= chunkSize ? limit : begin + chunkSize;
+            int align = Math.min(limit, end + Math.min(chunkSize, MAX_ALIGN));
+            for (int p = end; p < align; p++) {
+                if ('\n' == data.get(p)) {
+                    end = p + 1;
+                    break;
+                }
+            }
+            chunks.add(new Chunk(begin, end));
+            begin = end;
+        } while (begin < limit);
+        return chunks;
+    }
+
+    /**
+     * Find the '[', ',' and ']' of the root array within a chunk.
+     */
+    private static void findSeparators(ByteBuffer data, Chunk chunk) {
+        JSON5StructuralIndex index = chunk.index;
+        int depth = chunk.startDepth;
+        for (int i = 0; i < index.size(); i++) {
+            int offset = index.getOffset(i);
+            switch (data.get(offset)) {
+            case '[':
+            case '{':
+                if (0 == depth)
+                    chunk.addSeparator(offset, chunk.startLine + index.getLine(i));
+                depth++;
+                break;
+            case ']':
+            case '}':
+                if (0 == --depth)
+                    chunk.addSeparator(offset, chunk.startLine + index.getLine(i));
+                break;
+            case ',':
+                if (1 == depth)
+                    chunk.addSeparator(offset, chunk.startLine + index.getLine(i));
+                break;
+            }
+        }
+    }
+
+    /**
+     * Check that there is nothing but whitespace and comments before the '[' and
+     * after the ']' of the root array.
+     */
+    private void validateTrivia(ByteBuffer data, int open, int close, String sourceName) throws JSON5ParseError {
+        ByteBuffer prefix = data.duplicate();
+        prefix.limit(open);
+        ByteBuffer suffix = data.duplicate();
+        suffix.position(close + 1);
+        ByteBuffer trivia = ByteBuffer.allocate(prefix.remaining() + 2 + suffix.remaining());
+        trivia.put(prefix).put((byte) '[').put((byte) ']').put(suffix).flip();
+        JSON5Parser parser = parsers.acquire();
+        try {
+            parser.validate(trivia, sourceName);
+        } catch (JSON5ParseError err) {
+            throw invalid(data, sourceName, err);
+        } finally {
+            parsers.release(parser);
+        }
+    }
+
+    /**
+     * Validate the whole document with a single parser, so the error thrown is
+     * identical to a sequential parse.
+     *
+     * @return the exception to throw if the document is valid, in which case the
+     *         root is not an array.
+     */
+    private RuntimeException invalid(ByteBuffer data, String sourceName, JSON5ParseError cause)
+            throws JSON5ParseError {
+        JSON5Parser parser = parsers.acquire();
+        try {
+            parser.validate(data.duplicate(), sourceName);
+        } finally {
+            parsers.release(parser);
+        }
+        return new IllegalArgumentException("Expected the root of " + sourceName + " to be an array", cause);
+    }
+
+    private void invokeAll(List<Chunk> chunks, Consumer<Chunk> action) {
+        List<Callable<Void>> tasks = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks) {
+            tasks.add(() -> {
+                action.accept(chunk);
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    /**
+     * Run the tasks on the executor (or on this thread if there is only one) and
+     * wait for all of them to complete.
+     *
+     * @throws JSON5ParseError       the first error thrown by a task.
+     * @throws CancellationException if interrupted while waiting.
+     */
+    private void invokeAll(List<Callable<Void>> tasks) throws JSON5ParseError {
+        if (tasks.size() <= 1) {
+            for (Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                } catch (RuntimeException err) {
+                    throw err;
+                } catch (Exception err) {
+                    throw new IllegalStateException(err);
+                }
+            }
+            return;
+        }
+        List<Future<Void>> futures;
+        try {
+            futures = executor.invokeAll(tasks);
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            CancellationException cancel = new CancellationException("Interrupted while parsing");
+            cancel.initCause(err);
+            throw cancel;
+        } catch (ExecutionException err) {
+            Throwable cause = err.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -3,14 +3,20 @@ package com.brimworks.json5;
 import java.util.Deque;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import java.io.IOException;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.file.StandardOpenOption;
 import java.nio.channels.FileChannel;
+import java.nio.MappedByteBuffer;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.math.BigDecimal;
-import java.math.BigInteger;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
@@ -21,177 +27,365 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 public class JSON5Parser {
     private static final JSON5Key EMPTY = new JSON5Key("");
 
-    private static class LineOffset {
-        private int line;
-        private long offset;
-
-        public LineOffset(int line, long offset) {
-            this.line = line;
-            this.offset = offset;
-        }
-
-        public int getLine() {
-            return this.line;
-        }
-
-        public long getOffset() {
-            return this.offset;
-        }
+    /**
+     * Exceptions thrown when lexing some input.
+     */
+    private interface Lex<E extends Exception> {
+        void lex() throws E;
     }
 
     private static enum State {
         INITIAL, STRING_VALUE, VALUE, OBJECT, OBJECT_KEY, ARRAY, APPEND, EOF;
     }
 
+    // Marks transitions which the lexer can never produce:
+    private static final String INVALID = new String("Invalid transition");
+
+    /**
+     * Error message for a transition from a state (row) to a new state (column),
+     * indexed by ordinal, or null if the transition is valid.
+     */
+    private static final String[][] TRANSITIONS;
+    static {
+        String colon = "Unexpected ':'";
+        String comma = "Unexpected ','";
+        String end = "Expected end of stream";
+        String key = "Object keys must be a string";
+        String object = "Missing '}'";
+        String array = "Missing ']'";
+        String[] invalid = new String[State.values().length];
+        Arrays.fill(invalid, INVALID);
+        TRANSITIONS = new String[][] {
+                // INITIAL, STRING_VALUE, VALUE, OBJECT, OBJECT_KEY, ARRAY, APPEND, EOF
+                { INVALID, null, null, null, colon, null, comma, "Empty content" }, // INITIAL
+                { INVALID, end, end, end, null, end, null, null }, // STRING_VALUE
+                { INVALID, end, end, end, colon, end, null, null }, // VALUE
+                { INVALID, null, key, key, colon, key, comma, object }, // OBJECT
+                { INVALID, null, null, null, colon, null, comma, object }, // OBJECT_KEY
+                { INVALID, null, null, null, colon, null, comma, array }, // ARRAY
+                { INVALID, null, null, null, colon, null, comma, array }, // APPEND
+                invalid, // EOF
+        };
+    }
+
     // Per instance:
-    private Deque<JSON5Key> path = new ArrayDeque<>();
-    private Deque<LineOffset> begins = new ArrayDeque<>();
-    private String lastString = null;
+    // Stack of open containers, the path is only materialized for locations:
+    private int depth;
+    // True for arrays, false for objects:
+    private boolean[] arrays = new boolean[16];
+    // Current index within each array:
+    private int[] indices = new int[16];
+    // Current (interned) key within each object:
+    private JSON5Key[] keys = new JSON5Key[16];
+    // Location of the "[" or "{" of each container:
+    private int[] beginLines = new int[16];
+    private long[] beginOffsets = new long[16];
+    // Path of the last position, reused while it matches, see getPosition():
+    private JSON5Position.Node[] snapshots = new JSON5Position.Node[16];
+    private JSON5Key lastKey = null;
     private JSON5Visitor visitor = null;
+    // Classes of events the visitor consumes, see setVisitor():
+    private boolean visitTrivia;
+    private boolean visitNumbers;
+    private boolean visitStrings;
+    private boolean visitKeys;
+    private boolean visitLocations;
+    // Created on first use, unless interning was disabled:
+    private JSON5SymbolTable symbols = null;
+    private boolean internKeys = true;
+    // Only visit these paths, null to visit everything:
+    private JSON5Projection projection = null;
+    // Populated with the start of every line, null if lines are not indexed:
+    private JSON5LineIndex lineIndex = null;
+    // Accept any number of root values, see setMultiDocument():
+    private boolean multiDocument;
+    // Runs the lexer of in-memory input, null to lex on the calling thread:
+    private Executor pipeline = null;
+    private JSON5TokenRing ring;
+    // Reads channel input ahead of the lexer, null to read on the calling thread:
+    private Executor readAhead = null;
+    // Bounds on the input, read at the start of each parse:
+    private JSON5Limits limits = new JSON5Limits();
+    private int maxDepth = Integer.MAX_VALUE;
+
+    // Maximum size of each memory mapped window of a file, tests may shrink it:
+    int mapWindowSize = 1 << 30;
+
+    // Unconsumed input of a stream, null if not streaming:
+    private ByteBuffer carry;
+    private ByteBuffer carryBuffer;
 
     // Per parse unit:
     private State state;
+    // Projection nodes of the containers leading to projected values:
+    private Deque<JSON5Projection.Node> projected = new ArrayDeque<>();
+    // Projection node of the value of the current key, null if not projected:
+    private JSON5Projection.Node keyNode;
+    // Location of the current key, if visiting it was deferred:
+    private int keyLine;
+    private long keyOffset;
+    private final JSON5StringView keyView = new JSON5StringView();
+    // Depth within a subtree which is entirely visited or entirely skipped:
+    private int selectDepth;
+    private int skipDepth;
+    // Value of selectDepth to restore once skipChildren() is done, or -1:
+    private int skipSelectDepth = -1;
+    // Only checking the grammar, see validate():
+    private boolean validating;
+    // Only parsing a range of the elements of the root array, see parseElements():
+    private boolean elements;
+    private boolean lastElements;
     private String sourceName;
     private JSON5Location.Read readSource;
 
+    /**
+     * Find the projection node of the value about to be visited.
+     */
+    private JSON5Projection.Node projectValue() {
+        if (0 == depth)
+            return projection.getRoot();
+        return arrays[depth - 1] ? projected.getLast().index(indices[depth - 1]) : keyNode;
+    }
+
+    /**
+     * @return true if a value which is not a container should be visited.
+     */
+    private boolean isProjected() {
+        if (skipDepth > 0)
+            return false;
+        if (selectDepth > 0)
+            return true;
+        JSON5Projection.Node node = projectValue();
+        return null != node && node.isSelected();
+    }
+
+    /**
+     * Called when an object or array begins.
+     * 
+     * @return true if the container should be visited.
+     */
+    private boolean enterContainer() {
+        if (skipDepth > 0) {
+            skipDepth++;
+            return false;
+        } else if (selectDepth > 0) {
+            selectDepth++;
+            return true;
+        }
+        JSON5Projection.Node node = projectValue();
+        if (null == node) {
+            // Only validate the structure of this subtree:
+            skipDepth = 1;
+            lexer.setDiscarding(true);
+            return false;
+        } else if (node.isSelected()) {
+            selectDepth = 1;
+        } else {
+            if (visitKeys && inObject()) {
+                String key = keys[depth - 1].asKey();
+                keyView.set(CharBuffer.wrap(key), key.length());
+                keyView.setString(key);
+                visitor.visitKey(keyView, keyLine, keyOffset);
+            }
+            projected.addLast(node);
+        }
+        return true;
+    }
+
+    /**
+     * Called when an object or array ends.
+     * 
+     * @return true if the container was visited.
+     */
+    private boolean exitContainer() {
+        if (skipDepth > 0) {
+            if (0 != --skipDepth)
+                return false;
+            discardUnvisited(false);
+            if (skipSelectDepth < 0)
+                return false;
+            // The end of a container whose children were skipped is visited:
+            selectDepth = skipSelectDepth;
+            skipSelectDepth = -1;
+            return true;
+        } else if (selectDepth > 0) {
+            selectDepth--;
+        } else {
+            projected.removeLast();
+        }
+        return true;
+    }
+
+    /**
+     * Let the lexer skip accumulating the next token if the visitor will never
+     * see it.
+     * 
+     * @param isKey true if the next string is an object key, which is always
+     *              needed for the path.
+     */
+    private void discardUnvisited(boolean isKey) {
+        if (skipDepth > 0)
+            return;
+        lexer.setDiscardingStrings(!isKey && !visitStrings);
+        lexer.setDiscardingNumbers(!visitNumbers);
+    }
+
+    private void push(boolean isArray, int line, long offset) {
+        if (depth >= maxDepth)
+            error("Depth exceeds " + maxDepth, line, offset);
+        if (depth == arrays.length) {
+            int size = 2 * depth;
+            arrays = Arrays.copyOf(arrays, size);
+            indices = Arrays.copyOf(indices, size);
+            keys = Arrays.copyOf(keys, size);
+            beginLines = Arrays.copyOf(beginLines, size);
+            beginOffsets = Arrays.copyOf(beginOffsets, size);
+        }
+        arrays[depth] = isArray;
+        indices[depth] = 0;
+        keys[depth] = EMPTY;
+        beginLines[depth] = line;
+        beginOffsets[depth] = offset;
+        depth++;
+    }
+
+    private boolean inArray() {
+        return depth > 0 && arrays[depth - 1];
+    }
+
+    private boolean inObject() {
+        return depth > 0 && !arrays[depth - 1];
+    }
+
+    private void visitIndex(int line, long offset) {
+        if (visitLocations && inArray()) {
+            visitor.visitIndex(indices[depth - 1], line, offset);
+        }
+    }
+
     private void visitValue(int line, long offset) {
-        if (path.isEmpty()) {
+        if (!visitLocations || 0 == depth) {
             return;
-        } else if (path.getLast().isArray()) {
+        } else if (arrays[depth - 1]) {
             visitor.endArrayValue(line, offset);
         } else {
-            visitor.endObjectPair(path.getLast().asKey(), line, offset);
+            visitor.endObjectPair(keys[depth - 1].asKey(), line, offset);
         }
     }
 
-    private JSON5Lexer lexer = new JSON5Lexer(new JSON5Lexer.Visitor() {
+    // Drives the grammar, with tokens from the lexer or from a JSON5TokenRing:
+    private final JSON5Lexer.Visitor grammar = new JSON5Lexer.Visitor() {
         @Override
         public void visitComment(String comment, int line, long offset) {
-            if (null != visitor)
+            if (visitTrivia && selectDepth > 0)
                 visitor.visitComment(comment, line, offset);
         }
 
         @Override
         public void visitSpace(String space, int line, long offset) {
-            if (null != visitor)
+            if (visitTrivia && selectDepth > 0)
                 visitor.visitSpace(space, line, offset);
         }
 
         @Override
         public void visitNull(int line, long offset) {
             transitionState(State.VALUE, line, offset);
-            if (null != visitor) {
-                if (!path.isEmpty() && path.getLast().isArray()) {
-                    visitor.visitIndex(path.getLast().asIndex(), line, offset);
-                }
+            if (null != visitor && isProjected()) {
+                visitIndex(line, offset);
                 visitor.visitNull(line, offset);
                 visitValue(line, offset);
             }
+            if (0 == depth)
+                endDocument(line, offset);
         }
 
         @Override
         public void visit(boolean val, int line, long offset) {
             transitionState(State.VALUE, line, offset);
-            if (null != visitor) {
-                if (!path.isEmpty() && path.getLast().isArray()) {
-                    visitor.visitIndex(path.getLast().asIndex(), line, offset);
-                }
+            if (null != visitor && isProjected()) {
+                visitIndex(line, offset);
                 visitor.visit(val, line, offset);
                 visitValue(line, offset);
             }
+            if (0 == depth)
+                endDocument(line, offset);
         }
 
         @Override
-        public void visit(String val, int line, long offset) {
-            boolean isObjectKey = state == State.OBJECT || (state == State.APPEND && path.getLast().isObject());
+        public void visit(JSON5StringView val, int line, long offset) {
+            boolean isObjectKey = state == State.OBJECT || (state == State.APPEND && !arrays[depth - 1]);
             transitionState(State.STRING_VALUE, line, offset);
-            lastString = val;
+            // Only keys need to be materialized for the path:
+            if (!isObjectKey) {
+                lastKey = null;
+            } else if (skipDepth > 0) {
+                lastKey = EMPTY;
+            } else {
+                lastKey = key(val);
+                if (0 == selectDepth)
+                    keyNode = projected.getLast().key(lastKey.asKey());
+            }
             if (null != visitor) {
-                if (!isObjectKey) {
-                    if (!path.isEmpty() && path.getLast().isArray()) {
-                        visitor.visitIndex(path.getLast().asIndex(), line, offset);
+                if (isObjectKey) {
+                    if (selectDepth > 0 || (0 == skipDepth && null != keyNode && keyNode.isSelected())) {
+                        if (visitKeys)
+                            visitor.visitKey(val, line, offset);
+                    } else {
+                        // Visited if the value is an object or array:
+                        keyLine = line;
+                        keyOffset = offset;
                     }
-                    visitor.visit(val, line, offset);
+                } else if (isProjected()) {
+                    visitIndex(line, offset);
+                    if (visitStrings)
+                        visitor.visit(val, line, offset);
                     visitValue(line, offset);
-                } else {
-                    visitor.visitKey(val, line, offset);
-                }
-            }
-        }
-
-        @Override
-        public void visitNumber(BigInteger val, int line, long offset) {
-            transitionState(State.VALUE, line, offset);
-            if (null != visitor) {
-                if (!path.isEmpty() && path.getLast().isArray()) {
-                    visitor.visitIndex(path.getLast().asIndex(), line, offset);
-                }
-                visitor.visitNumber(val, line, offset);
-                visitValue(line, offset);
-            }
-        }
-
-        @Override
-        public void visitNumber(BigDecimal val, int line, long offset) {
-            transitionState(State.VALUE, line, offset);
-            if (null != visitor) {
-                if (!path.isEmpty() && path.getLast().isArray()) {
-                    visitor.visitIndex(path.getLast().asIndex(), line, offset);
-                }
-                visitor.visitNumber(val, line, offset);
-                visitValue(line, offset);
-            }
-        }
-
-        @Override
-        public void visitNumber(long val, int line, long offset) {
-            transitionState(State.VALUE, line, offset);
-            if (null != visitor) {
-                if (!path.isEmpty() && path.getLast().isArray()) {
-                    visitor.visitIndex(path.getLast().asIndex(), line, offset);
                 }
-                visitor.visitNumber(val, line, offset);
-                visitValue(line, offset);
             }
+            if (0 == depth)
+                endDocument(line, offset);
         }
 
         @Override
-        public void visitNumber(double val, int line, long offset) {
+        public void visitNumber(JSON5NumberView val, int line, long offset) {
             transitionState(State.VALUE, line, offset);
-            if (null != visitor) {
-                if (!path.isEmpty() && path.getLast().isArray()) {
-                    visitor.visitIndex(path.getLast().asIndex(), line, offset);
-                }
-                visitor.visitNumber(val, line, offset);
+            if (null != visitor && isProjected()) {
+                visitIndex(line, offset);
+                if (visitNumbers)
+                    visitor.visitNumber(val, line, offset);
                 visitValue(line, offset);
             }
+            if (0 == depth)
+                endDocument(line, offset);
         }
 
         @Override
         public void endObject(int line, long offset) {
-            if (path.isEmpty()) {
+            if (0 == depth) {
                 error("Unexpected '}'", line, offset);
-            } else if (path.getLast().isArray()) {
-                error("Expected ']' to match with '[' on line " + begins.getLast().getLine(), line, offset);
+            } else if (arrays[depth - 1]) {
+                error("Expected ']' to match with '[' on line " + beginLines[depth - 1], line, offset);
             }
             state = State.VALUE;
-            path.removeLast();
-            LineOffset beginning = begins.removeLast();
-            if (null != visitor) {
+            depth--;
+            if (exitContainer() && null != visitor) {
                 visitor.endObject(line, offset);
-                visitValue(beginning.getLine(), beginning.getOffset());
+                visitValue(beginLines[depth], beginOffsets[depth]);
             }
+            if (0 == depth)
+                endDocument(line, offset);
         }
 
         @Override
         public void startObject(int line, long offset) {
             transitionState(State.OBJECT, line, offset);
-            JSON5Key key = path.peekLast();
-            begins.addLast(new LineOffset(line, offset));
-            path.addLast(EMPTY);
-            if (null != visitor) {
-                if (null != key && key.isArray()) {
-                    visitor.visitIndex(key.asIndex(), line, offset);
+            boolean inArray = inArray();
+            boolean visit = enterContainer();
+            push(false, line, offset);
+            discardUnvisited(true);
+            if (visit && null != visitor) {
+                if (visitLocations && inArray) {
+                    visitor.visitIndex(indices[depth - 2], line, offset);
                 }
                 visitor.startObject(line, offset);
             }
@@ -199,29 +393,31 @@ public class JSON5Parser {
 
         @Override
         public void endArray(int line, long offset) {
-            if (path.isEmpty()) {
+            if (0 == depth) {
                 error("Unexpected ']'", line, offset);
-            } else if (!path.getLast().isArray()) {
-                error("Expected '}' to match with '{' on line " + begins.getLast().getLine(), line, offset);
+            } else if (!arrays[depth - 1]) {
+                error("Expected '}' to match with '{' on line " + beginLines[depth - 1], line, offset);
             }
             state = State.VALUE;
-            path.removeLast();
-            LineOffset beginning = begins.removeLast();
-            if (null != visitor) {
+            depth--;
+            if (exitContainer() && null != visitor) {
                 visitor.endArray(line, offset);
-                visitValue(beginning.getLine(), beginning.getOffset());
+                visitValue(beginLines[depth], beginOffsets[depth]);
             }
+            if (0 == depth)
+                endDocument(line, offset);
         }
 
         @Override
         public void startArray(int line, long offset) {
             transitionState(State.ARRAY, line, offset);
-            JSON5Key key = path.peekLast();
-            begins.addLast(new LineOffset(line, offset));
-            path.addLast(new JSON5Key(0));
-            if (null != visitor) {
-                if (null != key && key.isArray()) {
-                    visitor.visitIndex(key.asIndex(), line, offset);
+            boolean inArray = inArray();
+            boolean visit = enterContainer();
+            push(true, line, offset);
+            discardUnvisited(false);
+            if (visit && null != visitor) {
+                if (visitLocations && inArray) {
+                    visitor.visitIndex(indices[depth - 2], line, offset);
                 }
                 visitor.startArray(line, offset);
             }
@@ -229,29 +425,36 @@ public class JSON5Parser {
 
         @Override
         public void visitColon(int line, long offset) {
-            if (path.isEmpty()) {
+            if (0 == depth) {
                 error("Unexpected ':'", line, offset);
             }
             transitionState(State.OBJECT_KEY, line, offset);
-            path.removeLast();
-            path.addLast(new JSON5Key(lastString));
-            if (null != visitor)
+            if (null == lastKey) {
+                // String was not in key position, such as ["a": 1]
+                error("Unexpected ':'", line, offset);
+            }
+            keys[depth - 1] = lastKey;
+            discardUnvisited(false);
+            if (visitTrivia && selectDepth > 0)
                 visitor.visitColon(line, offset);
         }
 
         @Override
         public void visitComma(int line, long offset) {
-            if (path.isEmpty()) {
+            if (0 == depth) {
                 error("Unexpected ','", line, offset);
             }
             transitionState(State.APPEND, line, offset);
-            JSON5Key key = path.removeLast();
-            if (key.isArray()) {
-                path.addLast(new JSON5Key(key.asIndex() + 1));
-            } else {
-                path.addLast(EMPTY);
+            // The path is not tracked within a skipped subtree:
+            if (0 == skipDepth) {
+                if (arrays[depth - 1]) {
+                    indices[depth - 1]++;
+                } else {
+                    keys[depth - 1] = EMPTY;
+                }
             }
-            if (null != visitor)
+            discardUnvisited(!arrays[depth - 1]);
+            if (visitTrivia && selectDepth > 0)
                 visitor.visitComma(line, offset);
         }
 
@@ -267,23 +470,42 @@ public class JSON5Parser {
                     getLocation(line, offset));
         }
 
+        @Override
+        public void limitExceeded(String message, int line, long offset) {
+            throw new JSON5ParseError(message, getLocation(line, offset));
+        }
+
         @Override
         public void endOfStream(int line, long offset) {
-            transitionState(State.EOF, line, offset);
-            if (!path.isEmpty()) {
-                JSON5Key key = path.getLast();
-                if (key.isArray()) {
-                    error("Expected ']' before end of file to match with '[' on line " + begins.getLast().getLine(),
+            if (elements) {
+                // The range ends at the ',' or ']' which follows the last element:
+                boolean complete = State.VALUE == state || State.STRING_VALUE == state
+                        || (lastElements && (State.APPEND == state || (State.ARRAY == state && 0 == indices[0])));
+                if (1 != depth || !complete)
+                    error("Unexpected end of elements", line, offset);
+                return;
+            }
+            if (multiDocument && State.INITIAL == state) {
+                // Any number of documents, including none:
+                state = State.EOF;
+            } else {
+                transitionState(State.EOF, line, offset);
+            }
+            if (depth > 0) {
+                if (arrays[depth - 1]) {
+                    error("Expected ']' before end of file to match with '[' on line " + beginLines[depth - 1],
                             line, offset);
                 } else {
-                    error("Expected '}' before end of file to match with '{' on line " + begins.getLast().getLine(),
+                    error("Expected '}' before end of file to match with '{' on line " + beginLines[depth - 1],
                             line, offset);
                 }
             }
-            if (null != visitor)
+            if (null != visitor && !validating)
                 visitor.endOfStream(line, offset);
         }
-    });
+    };
+
+    private JSON5Lexer lexer = new JSON5Lexer(grammar);
 
     /**
      * Simply create a parser.
@@ -297,7 +519,7 @@ public class JSON5Parser {
      * @param visitor set the visitor to this
      */
     public JSON5Parser(JSON5Visitor visitor) {
-        this.visitor = visitor;
+        setVisitor(visitor);
     }
 
     /**
@@ -308,9 +530,218 @@ public class JSON5Parser {
      */
     public JSON5Parser setVisitor(JSON5Visitor visitor) {
         this.visitor = visitor;
+        Set<JSON5Visitor.Interest> interests = null == visitor ? EnumSet.noneOf(JSON5Visitor.Interest.class)
+                : visitor.getInterests();
+        visitTrivia = interests.contains(JSON5Visitor.Interest.TRIVIA);
+        visitNumbers = interests.contains(JSON5Visitor.Interest.NUMBERS);
+        visitStrings = interests.contains(JSON5Visitor.Interest.STRINGS);
+        visitKeys = interests.contains(JSON5Visitor.Interest.KEYS);
+        visitLocations = interests.contains(JSON5Visitor.Interest.LOCATIONS);
+        lexer.setTrivia(visitTrivia);
+        return this;
+    }
+
+    /**
+     * Replace the table used for interning object keys, tables may be shared
+     * between parsers.
+     * 
+     * @param symbols the symbol table to use or null to disable interning.
+     * @return this
+     */
+    public JSON5Parser setSymbolTable(JSON5SymbolTable symbols) {
+        this.symbols = symbols;
+        this.internKeys = null != symbols;
+        return this;
+    }
+
+    /**
+     * @return the table used for interning object keys, null if interning was
+     *         disabled.
+     */
+    public JSON5SymbolTable getSymbolTable() {
+        if (internKeys && null == symbols)
+            symbols = new JSON5SymbolTable();
+        return symbols;
+    }
+
+    /**
+     * Only visit the values at the paths selected by a projection (and the
+     * objects and arrays which contain them). Everything else is still validated,
+     * but strings and numbers are not decoded, keys are not materialized and the
+     * visitor is not called, which makes extracting a few values from a large
+     * document much cheaper. Outside of the selected values, only the structure
+     * leading to them is visited: comments, spaces, colons and commas are not.
+     * Takes effect when the next parse begins.
+     * 
+     * @param projection the paths to visit, or null to visit everything.
+     * @return this
+     */
+    public JSON5Parser setProjection(JSON5Projection projection) {
+        this.projection = projection;
+        return this;
+    }
+
+    /**
+     * @return the paths visited, or null if everything is visited.
+     */
+    public JSON5Projection getProjection() {
+        return projection;
+    }
+
+    /**
+     * Record the byte offset of the start of every line while parsing, which
+     * makes rendering the context line of an error (and jumping to a line) cheap.
+     * The index is cleared when each parse begins.
+     * 
+     * @param lineIndex the index to populate, or null to stop indexing lines.
+     * @return this
+     */
+    public JSON5Parser setLineIndex(JSON5LineIndex lineIndex) {
+        this.lineIndex = lineIndex;
+        lexer.setLineIndex(lineIndex);
+        return this;
+    }
+
+    /**
+     * @return the index of lines populated while parsing, or null if lines are
+     *         not indexed.
+     */
+    public JSON5LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    /**
+     * Accept a stream of root values (such as JSON5 Lines) instead of exactly one.
+     * Each value is a separate document, which may be separated from the next by
+     * whitespace and comments. After the root value of each document the visitor
+     * is called with {@link JSON5Visitor#endDocument(int, long)}, and the lexer
+     * continues with the next document so lines and offsets are relative to the
+     * whole stream. Input without any documents is accepted.
+     * 
+     * @param multiDocument true to accept any number of documents.
+     * @return this
+     */
+    public JSON5Parser setMultiDocument(boolean multiDocument) {
+        this.multiDocument = multiDocument;
+        return this;
+    }
+
+    /**
+     * @return true if any number of documents are accepted.
+     */
+    public boolean isMultiDocument() {
+        return multiDocument;
+    }
+
+    /**
+     * Lex in-memory input (a {@code ByteBuffer}, {@code byte[]} or
+     * {@code String}) on another thread, so lexing overlaps with the grammar and
+     * the visitor. Tokens are passed between the threads through a fixed size
+     * ring, and strings with escape sequences are decoded and numbers are
+     * converted by the lexing thread. This only pays off when the visitor does
+     * enough work per token to keep the calling thread as busy as the lexer, and
+     * a spare core is available: otherwise the hand off only adds overhead.
+     * Input read from a channel or file, or parsed with a projection or while
+     * populating a {@link JSON5LineIndex}, is always lexed on the calling thread.
+     * 
+     * The input must not be modified until the parse completes, and the calling
+     * thread waits for the lexing thread to stop before returning (or throwing).
+     * The executor should run the lexer on a thread which is never blocked on a
+     * pipelined parse itself, such as a dedicated thread: an executor which
+     * runs tasks on the calling thread simply disables the pipeline.
+     * 
+     * @param pipeline runs the lexer, or null (the default) to lex on the calling
+     *                 thread.
+     * @return this
+     */
+    public JSON5Parser setPipeline(Executor pipeline) {
+        this.pipeline = pipeline;
+        if (null == pipeline)
+            ring = null;
+        return this;
+    }
+
+    /**
+     * @return the executor which runs the lexer, or null if lexing on the calling
+     *         thread.
+     */
+    public Executor getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Read channel input on another thread, so the next chunk is read while the
+     * current one is lexed, see
+     * {@link com.brimworks.json5.ragel.Ragel#lex(ReadableByteChannel, Executor)}.
+     * This hides the latency of slow channels (network volumes, decompression),
+     * but only applies to {@link #parse(ReadableByteChannel, String, JSON5Location.Read)}.
+     * 
+     * @param readAhead runs the reads, or null (the default) to read on the
+     *                  calling thread.
+     * @return this
+     */
+    public JSON5Parser setReadAhead(Executor readAhead) {
+        this.readAhead = readAhead;
+        return this;
+    }
+
+    /**
+     * @return the executor which reads channel input, or null if reading on the
+     *         calling thread.
+     */
+    public Executor getReadAhead() {
+        return readAhead;
+    }
+
+    /**
+     * Bound the size of the input, its tokens and its nesting, see
+     * {@link JSON5Limits}. Input which exceeds a limit fails with a
+     * {@link JSON5ParseError} as soon as the limit is exceeded.
+     * 
+     * @param limits the limits, or null to remove all limits.
+     * @return this
+     */
+    public JSON5Parser setLimits(JSON5Limits limits) {
+        this.limits = null == limits ? new JSON5Limits() : limits;
+        return this;
+    }
+
+    /**
+     * @return the limits, which are unlimited by default.
+     */
+    public JSON5Limits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Only convert decimals to a double when no precision would be lost, by
+     * default decimals are rounded to the nearest double, see
+     * {@link JSON5Visitor#visitNumber(double, int, long)}.
+     * 
+     * @param losslessDecimals true to pass any decimal which is not an integer
+     *                         exactly representable as a double as a
+     *                         {@code BigDecimal}.
+     * @return this
+     */
+    public JSON5Parser setLosslessDecimals(boolean losslessDecimals) {
+        lexer.setLosslessDecimals(losslessDecimals);
         return this;
     }
 
+    /**
+     * Release any internal buffers which have grown beyond the specified
+     * capacity, useful when reusing a parser so a single large input does not
+     * retain memory for the lifetime of the parser.
+     * 
+     * @param maxCapacity maximum capacity (in bytes or chars) of buffers to
+     *                    retain.
+     */
+    public void trimBuffers(int maxCapacity) {
+        lexer.trimBuffers(maxCapacity);
+        if (null == carry && null != carryBuffer && carryBuffer.capacity() > maxCapacity)
+            carryBuffer = null;
+    }
+
     /**
      * Obtain the current location within the input, useful when implementing a
      * visitor.
@@ -321,11 +752,46 @@ public class JSON5Parser {
      * @return a new {@code JSON5Location} which will display source-text messages.
      */
     public JSON5Location getLocation(int line, long offset) {
-        return new JSON5Location(line, offset, sourceName, new ArrayList<>(path), readSource);
+        return getPosition(line, offset).toLocation();
     }
 
     /**
-     * Parse a JSON5 document at the specified path.
+     * Obtain a cheap snapshot of the current location within the input, which can
+     * later be expanded into a {@link JSON5Location} if needed. The path is shared
+     * with earlier positions, so only the entries which changed since the last
+     * call are allocated.
+     * 
+     * @param line   the current line (passed into the visitor methods)
+     * @param offset the current byte offset from the beginning of the UTF-8 encoded
+     *               file (passed into the visitor methods)
+     * @return a new {@code JSON5Position}.
+     */
+    public JSON5Position getPosition(int line, long offset) {
+        // The path is not tracked within a skipped subtree:
+        int size = validating ? 0 : depth - skipDepth;
+        if (snapshots.length < size)
+            snapshots = Arrays.copyOf(snapshots, arrays.length);
+        JSON5Position.Node node = null;
+        for (int i = 0; i < size; i++) {
+            JSON5Key key = arrays[i] ? null : keys[i];
+            JSON5Position.Node snapshot = snapshots[i];
+            if (null == snapshot || !snapshot.matches(node, key, indices[i])) {
+                snapshot = snapshots[i] = new JSON5Position.Node(node, key, indices[i]);
+            }
+            node = snapshot;
+        }
+        long lineStart = null != lineIndex && line <= lineIndex.getLineCount() ? lineIndex.getLineStart(line) : -1;
+        return new JSON5Position(line, offset, lineStart, sourceName, readSource, node);
+    }
+
+    /**
+     * Parse a JSON5 document at the specified path. A regular file is memory
+     * mapped and fed to the lexer directly, one window of at most 1 GB at a time,
+     * so files of any size are supported without copying them onto the heap.
+     * Anything else (such as a pipe or a file which reports no size) is read as a
+     * channel. The file is closed before this returns, but the mappings are left
+     * to the garbage collector, so buffers obtained from
+     * {@link JSON5StringView#getRawUTF8()} remain valid.
      * 
      * @param path location of JSON5 document.
      * @throws JSON5ParseError if source-text does not conform to JSON5.
@@ -334,11 +800,53 @@ public class JSON5Parser {
     public void parse(Path path) throws IOException, JSON5ParseError {
         if (null == path)
             throw new NullPointerException("Unexpected null path to parse");
-        FileChannel fc = FileChannel.open(path, StandardOpenOption.READ);
-        parse(fc, path.toString(), (buff, skip) -> {
-            fc.position(skip);
-            return fc.read(buff);
-        });
+        lex(path, false);
+    }
+
+    // Lex the file one memory mapped window at a time:
+    private void lex(Path path, boolean validate) throws IOException {
+        try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = fc.size();
+            if (0 == size || !Files.isRegularFile(path)) {
+                // The size is unknown, so the file can not be mapped. Nor can it be
+                // read twice, so errors have no source-text, and it is validated by
+                // a single parse without a visitor which locates any error:
+                Lex<IOException> lex = () -> {
+                    begin(path.toString(), null);
+                    lexer.lex(fc);
+                };
+                if (validate) {
+                    withoutVisitor(lex);
+                } else {
+                    lex.lex();
+                }
+                return;
+            }
+            begin(path.toString(), readSource(path));
+            if (validate)
+                beginValidating();
+            long position = 0;
+            int windowSize = mapWindowSize;
+            while (true) {
+                long len = Math.min(windowSize, size - position);
+                boolean eof = position + len == size;
+                MappedByteBuffer window = fc.map(FileChannel.MapMode.READ_ONLY, position, len);
+                try {
+                    if (!lexer.lex(window, eof) && !eof) {
+                        // Token is larger than the window:
+                        if (Integer.MAX_VALUE == windowSize)
+                            throw new IOException("Token at byte offset " + position + " of " + path
+                                    + " exceeds the maximum mapping size");
+                        windowSize = (int) Math.min(2L * windowSize, Integer.MAX_VALUE);
+                    }
+                    position += window.position();
+                } finally {
+                    lexer.releaseData();
+                }
+                if (eof)
+                    break;
+            }
+        }
     }
 
     /**
@@ -349,32 +857,43 @@ public class JSON5Parser {
      * @throws JSON5ParseError if a parse error is encountered.
      */
     public void parse(String str, String sourceName) throws JSON5ParseError {
-        parse(ByteBuffer.wrap(str.getBytes(UTF_8)), sourceName);
+        parse(str.getBytes(UTF_8), sourceName);
+    }
+
+    /**
+     * Parse a JSON5 document from a byte array. The lexer reads heap buffers
+     * (such as this array) directly, which is cheaper than reading from a direct
+     * buffer.
+     * 
+     * @param utf8       utf8 encoded bytes
+     * @param sourceName name of source location used in errors
+     * @throws JSON5ParseError if a parse error is encountered.
+     */
+    public void parse(byte[] utf8, String sourceName) throws JSON5ParseError {
+        parse(ByteBuffer.wrap(utf8), sourceName);
     }
 
     /**
      * Parse a JSON5 document from a byte buffer, if you have a {@code byte[]},
-     * simply use {@link ByteBuffer#wrap(byte[])} to wrap it into a
-     * {@code ByteBuffer}.
+     * see {@link #parse(byte[], String)}.
      * 
      * @param utf8       utf8 encoded byte buffer
      * @param sourceName name of source location used in errors
      * @throws JSON5ParseError if a parse error is encountered.
      */
     public void parse(ByteBuffer utf8, String sourceName) throws JSON5ParseError {
-        this.sourceName = sourceName;
-        this.readSource = (into, skip) -> {
-            ByteBuffer slice = utf8.slice();
-            slice.position(slice.position() + (int) skip);
-            int len = Math.min(slice.remaining(), into.remaining());
-            into.put(slice);
-            return len;
-        };
-        this.state = State.INITIAL;
-        this.path.clear();
-        this.begins.clear();
-        lexer.reset();
-        lexer.lex(utf8, true);
+        begin(sourceName, readSource(utf8));
+        // The lexing thread can not see which subtrees a projection skips, so
+        // it would decode them in full:
+        if (null == pipeline || null != lineIndex || null != projection) {
+            lexer.lex(utf8, true);
+            return;
+        }
+        if (null == ring)
+            ring = new JSON5TokenRing();
+        if (!ring.run(utf8, pipeline, grammar, visitTrivia, visitStrings, visitNumbers, lexer.isLosslessDecimals(),
+                limits))
+            lexer.lex(utf8, true);
     }
 
     /**
@@ -392,13 +911,522 @@ public class JSON5Parser {
             throws IOException, JSON5ParseError {
         if (null == in)
             throw new NullPointerException("Expected ReadableByteChannel to be non-null");
+        begin(sourceName, readSource);
+        if (null == readAhead)
+            lexer.lex(in);
+        else
+            lexer.lex(in, readAhead);
+    }
+
+    /**
+     * Check that a JSON5 document conforms to the JSON5 grammar, without calling
+     * the visitor. Strings are not decoded, numbers are not converted and the
+     * path is not tracked, which makes this much cheaper than parsing. If the
+     * document is invalid, it is parsed again to report the error with its full
+     * location, so the error is identical to the one thrown by
+     * {@link #parse(ByteBuffer, String)}.
+     * 
+     * @param utf8       utf8 encoded byte buffer
+     * @param sourceName name of source location used in errors
+     * @throws JSON5ParseError if source-text does not conform to JSON5.
+     */
+    public void validate(ByteBuffer utf8, String sourceName) throws JSON5ParseError {
+        int start = utf8.position();
+        begin(sourceName, readSource(utf8));
+        beginValidating();
+        try {
+            lexer.lex(utf8, true);
+        } catch (JSON5ParseError err) {
+            throw locate(err, () -> {
+                utf8.position(start);
+                parse(utf8, sourceName);
+            });
+        } finally {
+            validating = false;
+        }
+    }
+
+    /**
+     * Check that a JSON5 document in a string conforms to the JSON5 grammar, see
+     * {@link #validate(ByteBuffer, String)}.
+     * 
+     * @param str        string to validate
+     * @param sourceName name of source location used in errors
+     * @throws JSON5ParseError if source-text does not conform to JSON5.
+     */
+    public void validate(String str, String sourceName) throws JSON5ParseError {
+        validate(ByteBuffer.wrap(str.getBytes(UTF_8)), sourceName);
+    }
+
+    /**
+     * Check that a JSON5 document at the specified path conforms to the JSON5
+     * grammar, see {@link #validate(ByteBuffer, String)}. The file is memory
+     * mapped as done by {@link #parse(Path)}. Input which can not be mapped (such
+     * as a pipe) can not be read twice either, so it is parsed once without a
+     * visitor instead, which is slower but reports the same errors.
+     * 
+     * @param path location of JSON5 document.
+     * @throws JSON5ParseError if source-text does not conform to JSON5.
+     * @throws IOException     if there was an error reading the file at Path.
+     */
+    public void validate(Path path) throws IOException, JSON5ParseError {
+        if (null == path)
+            throw new NullPointerException("Unexpected null path to validate");
+        try {
+            lex(path, true);
+        } catch (JSON5ParseError err) {
+            // Input which was parsed rather than validated is already located:
+            if (!validating)
+                throw err;
+            throw locate(err, () -> lex(path, false));
+        } finally {
+            validating = false;
+        }
+    }
+
+    /**
+     * Treat the whole document as a skipped subtree, so only the grammar is
+     * checked.
+     */
+    private void beginValidating() {
+        validating = true;
+        selectDepth = 0;
+        skipDepth = 1;
+        lexer.setDiscarding(true);
+    }
+
+    /**
+     * Parse a range of the elements of the root array, used by
+     * {@link JSON5ParallelParser}. The visitor is called as if the whole document
+     * was parsed, except that the root array itself and the end of stream are not
+     * visited.
+     * 
+     * @param utf8       the whole document.
+     * @param begin      offset within utf8 after the '[' or ',' which precedes the
+     *                   first element.
+     * @param end        offset within utf8 of the ',' or ']' which follows the
+     *                   last element.
+     * @param line       line number at begin.
+     * @param index      index of the first element.
+     * @param last       true if end is the ']' of the root array.
+     * @param sourceName name of source location used in errors
+     * @throws JSON5ParseError if the elements do not conform to JSON5.
+     */
+    void parseElements(ByteBuffer utf8, int begin, int end, int line, int index, boolean last, String sourceName)
+            throws JSON5ParseError {
+        if (null != projection)
+            throw new IllegalStateException("Projections are not supported when parsing elements");
+        begin(sourceName, readSource(utf8));
+        long offset = begin - utf8.position();
+        lexer.setStart(line, offset);
+        elements = true;
+        lastElements = last;
+        push(true, line, offset);
+        indices[0] = index;
+        state = 0 == index ? State.ARRAY : State.APPEND;
+        ByteBuffer range = utf8.duplicate();
+        range.limit(end);
+        range.position(begin);
+        lexer.lex(range, true);
+    }
+
+    /**
+     * Parse a piece of a larger stream which begins at the start of a line, used
+     * by {@link JSON5LinesExecutor}. Lines and offsets are relative to the whole
+     * stream.
+     * 
+     * @param utf8       the piece of the stream.
+     * @param line       line number of the first byte.
+     * @param offset     offset of the first byte within the stream.
+     * @param sourceName name of source location used in errors
+     * @throws JSON5ParseError if source-text does not conform to JSON5.
+     */
+    void parse(ByteBuffer utf8, int line, long offset, String sourceName) throws JSON5ParseError {
+        begin(sourceName, readSource(utf8, offset));
+        lexer.setStart(line, offset);
+        lexer.lex(utf8, true);
+    }
+
+    /**
+     * Validation does not track the path, so lex the input again without a
+     * visitor to obtain the full location of an error.
+     * 
+     * @param err the error found while validating.
+     * @param lex lexes the input again.
+     * @return the error with the full location.
+     */
+    private <E extends Exception> JSON5ParseError locate(JSON5ParseError err, Lex<E> lex) throws E {
+        try {
+            withoutVisitor(lex);
+        } catch (JSON5ParseError located) {
+            return located;
+        }
+        return err;
+    }
+
+    /**
+     * Lex some input without a visitor or projection, which still tracks the
+     * full location of an error.
+     */
+    private <E extends Exception> void withoutVisitor(Lex<E> lex) throws E {
+        JSON5Visitor savedVisitor = visitor;
+        JSON5Projection savedProjection = projection;
+        setVisitor(null);
+        projection = null;
+        try {
+            lex.lex();
+        } finally {
+            setVisitor(savedVisitor);
+            projection = savedProjection;
+        }
+    }
+
+    /**
+     * Begin parsing a stream of input which will be pushed to this parser one
+     * chunk at a time via {@link #feed(ByteBuffer)}, see
+     * {@link #beginStream(String, JSON5Location.Read)}.
+     * 
+     * @param sourceName optional name of source text location (for better errors).
+     */
+    public void beginStream(String sourceName) {
+        beginStream(sourceName, null);
+    }
+
+    /**
+     * Begin parsing a stream of input which will be pushed to this parser one
+     * chunk at a time via {@link #feed(ByteBuffer)}, this never blocks which makes
+     * it suitable for parsing network reads within a selector loop. Once the input
+     * is exhausted call {@link #endStream()}.
+     * 
+     * @param sourceName optional name of source text location (for better errors).
+     * @param readSource optional function for obtaining source-text error message.
+     */
+    public void beginStream(String sourceName, JSON5Location.Read readSource) {
+        begin(sourceName, readSource);
+        if (null == carryBuffer)
+            carryBuffer = ByteBuffer.allocate(1024);
+        carry = carryBuffer;
+        carry.clear();
+    }
+
+    /**
+     * Feed the next chunk of a stream to the parser. All remaining bytes of the
+     * chunk are consumed, tokens which are split across chunks are copied
+     * internally, so the chunk may be reused as soon as this returns. The visitor
+     * is called for every token completed by this chunk.
+     * 
+     * @param utf8 next chunk of utf8 encoded input, the position is advanced to
+     *             the limit.
+     * @return true if a complete top-level value has been found, in which case the
+     *         caller may decide to call {@link #endStream()}. Otherwise more input
+     *         is needed. Note that a top-level number is only known to be complete
+     *         once it is followed by another token or {@link #endStream()} is
+     *         called.
+     * @throws JSON5ParseError       if the input does not conform to JSON5, the
+     *                               stream can not be continued after this.
+     * @throws IllegalStateException if {@link #beginStream(String)} was not
+     *                               called.
+     */
+    public boolean feed(ByteBuffer utf8) throws JSON5ParseError {
+        if (null == carry)
+            throw new IllegalStateException("Expected beginStream() before feed()");
+        try {
+            // Append to the carried partial token until it is complete:
+            while (carry.position() > 0 && utf8.hasRemaining()) {
+                int carried = carry.position();
+                int len = Math.min(utf8.remaining(), Math.max(carried, 256));
+                ByteBuffer prefix = utf8.duplicate();
+                prefix.limit(prefix.position() + len);
+                appendCarry(prefix);
+                carry.flip();
+                lexer.lex(carry, false);
+                int pos = carry.position();
+                if (pos >= carried) {
+                    // Lexer state is relative to pos, which is the same byte within
+                    // the chunk, so continue directly from the chunk:
+                    utf8.position(utf8.position() + pos - carried);
+                    carry.clear();
+                } else {
+                    utf8.position(utf8.position() + len);
+                    carry.compact();
+                }
+            }
+            if (utf8.hasRemaining()) {
+                lexer.lex(utf8, false);
+                appendCarry(utf8);
+            }
+        } catch (JSON5ParseError ex) {
+            carry = null;
+            throw ex;
+        } finally {
+            utf8.position(utf8.limit());
+        }
+        return 0 == depth && (State.VALUE == state || State.STRING_VALUE == state);
+    }
+
+    /**
+     * Signal the end of a stream, which completes any token at the end of the
+     * input and validates that the document is complete.
+     * 
+     * @throws JSON5ParseError       if the input does not conform to JSON5.
+     * @throws IllegalStateException if {@link #beginStream(String)} was not
+     *                               called.
+     */
+    public void endStream() throws JSON5ParseError {
+        if (null == carry)
+            throw new IllegalStateException("Expected beginStream() before endStream()");
+        ByteBuffer remaining = carry;
+        carry = null;
+        remaining.flip();
+        lexer.lex(remaining, true);
+        remaining.clear();
+    }
+
+    // Append the remaining input to the carry, growing it as necessary.
+    private void appendCarry(ByteBuffer utf8) {
+        if (carry.remaining() < utf8.remaining()) {
+            int size = carry.capacity();
+            while (size - carry.position() < utf8.remaining()) {
+                size *= 2;
+            }
+            ByteBuffer fresh = ByteBuffer.allocate(size);
+            carry.flip();
+            fresh.put(carry);
+            carry = carryBuffer = fresh;
+        }
+        carry.put(utf8);
+    }
+
+    /**
+     * Create a pull style {@link JSON5Reader} over a byte buffer. Note that the
+     * reader takes over this parser, replacing any visitor which was set and
+     * ignoring any projection, so the parser must not be used for anything else
+     * until the reader is exhausted.
+     * 
+     * @param utf8       utf8 encoded byte buffer
+     * @param sourceName name of source location used in errors
+     * @return a new reader positioned before the first token.
+     */
+    public JSON5Reader reader(ByteBuffer utf8, String sourceName) {
+        begin(sourceName, readSource(utf8));
+        return new JSON5Reader(this, utf8);
+    }
+
+    /**
+     * Create a pull style {@link JSON5Reader} over a string, see
+     * {@link #reader(ByteBuffer, String)}.
+     * 
+     * @param str        string to parse
+     * @param sourceName name of source location used in errors
+     * @return a new reader positioned before the first token.
+     */
+    public JSON5Reader reader(String str, String sourceName) {
+        return reader(ByteBuffer.wrap(str.getBytes(UTF_8)), sourceName);
+    }
+
+    /**
+     * Create a pull style {@link JSON5Reader} over the JSON5 document at the
+     * specified path, see {@link #reader(ByteBuffer, String)}. Be sure to
+     * {@link JSON5Reader#close()} the reader when done.
+     * 
+     * @param path location of JSON5 document.
+     * @return a new reader positioned before the first token.
+     * @throws IOException if the file at path could not be opened.
+     */
+    public JSON5Reader reader(Path path) throws IOException {
+        if (null == path)
+            throw new NullPointerException("Unexpected null path to parse");
+        FileChannel fc = FileChannel.open(path, StandardOpenOption.READ);
+        begin(path.toString(), readSource(path));
+        return new JSON5Reader(this, fc, true);
+    }
+
+    /**
+     * Create a pull style {@link JSON5Reader} over a
+     * {@code ReadableByteChannel}, see {@link #reader(ByteBuffer, String)}. The
+     * channel is not closed by the reader.
+     * 
+     * @param in         required ReadableByteChannel
+     * @param sourceName optional name of source text location (for better errors).
+     * @param readSource optional function for obtaining source-text error message.
+     * @return a new reader positioned before the first token.
+     */
+    public JSON5Reader reader(ReadableByteChannel in, String sourceName, JSON5Location.Read readSource) {
+        if (null == in)
+            throw new NullPointerException("Expected ReadableByteChannel to be non-null");
+        begin(sourceName, readSource);
+        return new JSON5Reader(this, in, false);
+    }
+
+    /**
+     * Reset the per parse unit state, used by all the entry points.
+     */
+    void begin(String sourceName, JSON5Location.Read readSource) {
+        this.carry = null;
         this.sourceName = sourceName;
         this.readSource = readSource;
         this.state = State.INITIAL;
-        this.path.clear();
-        this.begins.clear();
+        this.depth = 0;
+        Arrays.fill(snapshots, null);
+        this.projected.clear();
+        this.keyNode = null;
+        this.skipDepth = 0;
+        this.skipSelectDepth = -1;
+        this.validating = false;
+        this.elements = false;
+        this.selectDepth = null == projection || projection.getRoot().isSelected() ? 1 : 0;
+        lexer.setVisitor(grammar);
         lexer.reset();
-        lexer.lex(in);
+        limits.applyTo(lexer);
+        this.maxDepth = limits.getMaxDepth();
+        if (null != lineIndex)
+            lineIndex.clear();
+        discardUnvisited(false);
+    }
+
+    /**
+     * Drop all references to the last input, so an idle parser does not retain
+     * it.
+     */
+    void releaseInput() {
+        this.carry = null;
+        this.sourceName = null;
+        this.readSource = null;
+        lexer.releaseData();
+    }
+
+    /**
+     * Feed the next piece of input to the lexer, see
+     * {@link com.brimworks.json5.ragel.Ragel#lex(ByteBuffer, boolean)}.
+     */
+    boolean lex(ByteBuffer utf8, boolean eof) {
+        return lexer.lex(utf8, eof);
+    }
+
+    /**
+     * Stop visiting until the innermost open containers which were visited have
+     * ended, only visiting the end of the outermost one. The lexer discards the
+     * input in the meantime, as it does for subtrees which are not projected.
+     * 
+     * @param open number of visited containers to skip the rest of.
+     */
+    void skipChildren(int open) {
+        for (int i = 0; i < open; i++) {
+            if (selectDepth > 0) {
+                selectDepth--;
+            } else {
+                projected.removeLast();
+            }
+        }
+        skipSelectDepth = selectDepth;
+        selectDepth = 0;
+        skipDepth += open;
+        lexer.setDiscarding(true);
+    }
+
+    /**
+     * Pass the tokens of the input which began last to a {@link JSON5Reader}
+     * instead of the grammar, the reader then drives the grammar with each token
+     * before queueing it. Any visitor is dropped and any projection ignored, so
+     * every token reaches the reader with its string or number accumulated.
+     * 
+     * @param tokens receives the tokens from the lexer.
+     * @return the grammar, which validates each token and throws a
+     *         {@link JSON5ParseError} if it is unexpected.
+     */
+    JSON5Lexer.Visitor redirectTokens(JSON5Lexer.Visitor tokens) {
+        setVisitor(null);
+        visitStrings = true;
+        visitNumbers = true;
+        selectDepth = 1;
+        discardUnvisited(false);
+        lexer.setVisitor(tokens);
+        return grammar;
+    }
+
+    /**
+     * @return true while the tokens of a subtree are only validated, see
+     *         {@link #skipChildren(int)}.
+     */
+    boolean isSkipping() {
+        return skipDepth > 0;
+    }
+
+    /**
+     * @return the interned key if the last string was an object key, otherwise
+     *         null.
+     */
+    String getLastKey() {
+        return null == lastKey ? null : lastKey.asKey();
+    }
+
+    String getSourceName() {
+        return sourceName;
+    }
+
+    JSON5Location.Read getReadSource() {
+        return readSource;
+    }
+
+    // The file is only reopened if an error message needs the source-text.
+    private static JSON5Location.Read readSource(Path path) {
+        return (buff, skip) -> {
+            try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ)) {
+                source.position(skip);
+                return source.read(buff);
+            }
+        };
+    }
+
+    // Note that the lexer advances the position of the buffer, so capture the
+    // initial position now.
+    private static JSON5Location.Read readSource(ByteBuffer utf8) {
+        return readSource(utf8, 0);
+    }
+
+    /**
+     * Read the source-text of a piece of a stream which begins at the start of a
+     * line, anything before the piece reads as newlines.
+     */
+    private static JSON5Location.Read readSource(ByteBuffer utf8, long base) {
+        ByteBuffer source = utf8.duplicate();
+        return (into, skip) -> {
+            int len = 0;
+            for (; skip < base && into.hasRemaining(); skip++, len++) {
+                into.put((byte) '\n');
+            }
+            skip -= base;
+            if (skip < 0 || skip >= source.remaining())
+                return len;
+            ByteBuffer slice = source.duplicate();
+            slice.position(source.position() + (int) skip);
+            if (slice.remaining() > into.remaining())
+                slice.limit(slice.position() + into.remaining());
+            len += slice.remaining();
+            into.put(slice);
+            return len;
+        };
+    }
+
+    // Obtain the key for a string in key position, interning it if possible.
+    private JSON5Key key(JSON5StringView val) {
+        JSON5Key key = internKeys ? getSymbolTable().lookup(val) : null;
+        if (null == key)
+            return new JSON5Key(val.toString());
+        val.setString(key.asKey());
+        return key;
+    }
+
+    /**
+     * Called when the root value ends, which begins the next document if there
+     * may be more than one.
+     */
+    private void endDocument(int line, long offset) {
+        if (!multiDocument)
+            return;
+        state = State.INITIAL;
+        if (null != visitor && !validating)
+            visitor.endDocument(line, offset);
     }
 
     private void error(String msg, int line, long offset) {
@@ -406,156 +1434,11 @@ public class JSON5Parser {
     }
 
     private void transitionState(State newState, int line, long offset) {
-        switch (state) {
-            case INITIAL:
-                switch (newState) {
-                    case INITIAL:
-                        throw new AssertionError("Unexpected transition to INITIAL");
-                    case STRING_VALUE:
-                        break;
-                    case VALUE:
-                        break;
-                    case OBJECT:
-                        break;
-                    case OBJECT_KEY:
-                        error("Unexpected ':'", line, offset);
-                    case ARRAY:
-                        break;
-                    case APPEND:
-                        error("Unexpected ','", line, offset);
-                    case EOF:
-                        error("Empty content", line, offset);
-                        break;
-                }
-                break;
-
-            case STRING_VALUE:
-                switch (newState) {
-                    case INITIAL:
-                        throw new AssertionError("Unexpected transition to INITIAL");
-                    case STRING_VALUE:
-                        error("Expected end of stream", line, offset);
-                    case VALUE:
-                        error("Expected end of stream", line, offset);
-                    case OBJECT:
-                        error("Expected end of stream", line, offset);
-                    case OBJECT_KEY:
-                        break;
-                    case ARRAY:
-                        error("Expected end of stream", line, offset);
-                    case APPEND:
-                        break;
-                    case EOF:
-                        break;
-                }
-                break;
-
-            case VALUE:
-                switch (newState) {
-                    case INITIAL:
-                        throw new AssertionError("Unexpected transition to INITIAL");
-                    case STRING_VALUE:
-                        error("Expected end of stream", line, offset);
-                    case VALUE:
-                        error("Expected end of stream", line, offset);
-                    case OBJECT:
-                        error("Expected end of stream", line, offset);
-                    case OBJECT_KEY:
-                        error("Unexpected ':'", line, offset);
-                    case ARRAY:
-                        error("Expected end of stream", line, offset);
-                    case APPEND:
-                        break;
-                    case EOF:
-                        break;
-                }
-                break;
-            case OBJECT:
-                switch (newState) {
-                    case INITIAL:
-                        throw new AssertionError("Unexpected transition to INITIAL");
-                    case STRING_VALUE:
-                        break;
-                    case VALUE:
-                        error("Object keys must be a string", line, offset);
-                    case OBJECT:
-                        error("Object keys must be a string", line, offset);
-                    case OBJECT_KEY:
-                        error("Unexpected ':'", line, offset);
-                    case ARRAY:
-                        error("Object keys must be a string", line, offset);
-                    case APPEND:
-                        error("Unexpected ','", line, offset);
-                    case EOF:
-                        error("Missing '}'", line, offset);
-                        break;
-                }
-                break;
-            case OBJECT_KEY:
-                switch (newState) {
-                    case INITIAL:
-                        throw new AssertionError("Unexpected transition to INITIAL");
-                    case STRING_VALUE:
-                        break;
-                    case VALUE:
-                        break;
-                    case OBJECT:
-                        break;
-                    case OBJECT_KEY:
-                        error("Unexpected ':'", line, offset);
-                    case ARRAY:
-                        break;
-                    case APPEND:
-                        error("Unexpected ','", line, offset);
-                    case EOF:
-                        error("Missing '}'", line, offset);
-                }
-                break;
-
-            case ARRAY:
-                switch (newState) {
-                    case INITIAL:
-                        throw new AssertionError("Unexpected transition to INITIAL");
-                    case STRING_VALUE:
-                        break;
-                    case VALUE:
-                        break;
-                    case OBJECT:
-                        break;
-                    case OBJECT_KEY:
-                        error("Unexpected ':'", line, offset);
-                    case ARRAY:
-                        break;
-                    case APPEND:
-                        error("Unexpected ','", line, offset);
-                    case EOF:
-                        error("Missing ']'", line, offset);
-                }
-                break;
-
-            case APPEND:
-                switch (newState) {
-                    case INITIAL:
-                        throw new AssertionError("Unexpected transition to INITIAL");
-                    case STRING_VALUE:
-                        break;
-                    case VALUE:
-                        break;
-                    case OBJECT:
-                        break;
-                    case OBJECT_KEY:
-                        error("Unexpected ':'", line, offset);
-                    case ARRAY:
-                        break;
-                    case APPEND:
-                        error("Unexpected ','", line, offset);
-                    case EOF:
-                        error("Missing ']'", line, offset);
-                }
-                break;
-
-            case EOF:
-                throw new AssertionError("Unexpected transition from EOF");
+        String err = TRANSITIONS[state.ordinal()][newState.ordinal()];
+        if (null != err) {
+            if (INVALID == err)
+                throw new AssertionError("Unexpected transition from " + state + " to " + newState);
+            error(err, line, offset);
         }
         state = newState;
     }
@@ -0,0 +1,203 @@
+package com.brimworks.json5;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Thread safe pool of {@link JSON5Parser} instances, which avoids the cost of
+ * constructing a parser (and growing its buffers) for every document. All
+ * parsers in the pool share a single {@link JSON5SymbolTable}.
+ *
+ * The simplest use is via the {@code parse()} methods which borrow a parser for
+ * the duration of the call:
+ *
+ * <pre>
+ * JSON5ParserPool pool = new JSON5ParserPool();
+ * pool.parse(message, "request", visitor);
+ * </pre>
+ *
+ * Alternatively {@link #acquire()} a parser and {@link #release(JSON5Parser)} it
+ * when done. When a parser is released, buffers which grew beyond
+ * {@code maxRetainedBuffer} are discarded and at most {@code maxIdle} parsers
+ * are retained, so a single huge document does not pin memory forever.
+ */
+public class JSON5ParserPool {
+    private final Deque<JSON5Parser> idle = new ArrayDeque<>();
+    private final int maxIdle;
+    private final int maxRetainedBuffer;
+    private final JSON5SymbolTable symbols;
+    private volatile JSON5Limits limits = null;
+
+    /**
+     * Create a pool which retains up to two idle parsers per processor and
+     * buffers of up to 64 KB.
+     */
+    public JSON5ParserPool() {
+        this(2 * Runtime.getRuntime().availableProcessors(), 64 * 1024, new JSON5SymbolTable());
+    }
+
+    /**
+     * Create a pool.
+     *
+     * @param maxIdle           maximum number of idle parsers to retain.
+     * @param maxRetainedBuffer maximum capacity of buffers retained by an idle
+     *                          parser.
+     * @param symbols           table shared by all parsers for interning object
+     *                          keys, may be null to disable interning.
+     */
+    public JSON5ParserPool(int maxIdle, int maxRetainedBuffer, JSON5SymbolTable symbols) {
+        if (maxIdle < 0)
+            throw new IllegalArgumentException("Expected non-negative maxIdle, got " + maxIdle);
+        if (maxRetainedBuffer < 0)
+            throw new IllegalArgumentException("Expected non-negative maxRetainedBuffer, got " + maxRetainedBuffer);
+        this.maxIdle = maxIdle;
+        this.maxRetainedBuffer = maxRetainedBuffer;
+        this.symbols = symbols;
+    }
+
+    /**
+     * @return the symbol table shared by all parsers of this pool, may be null.
+     */
+    public JSON5SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * Set the limits of every parser acquired from this pool, see
+     * {@link JSON5Parser#setLimits(JSON5Limits)}.
+     *
+     * @param limits the limits, or null (the default) for no limits.
+     * @return this
+     */
+    public JSON5ParserPool setLimits(JSON5Limits limits) {
+        this.limits = limits;
+        return this;
+    }
+
+    /**
+     * @return the limits of acquired parsers, or null if there are none.
+     */
+    public JSON5Limits getLimits() {
+        return limits;
+    }
+
+    /**
+     * @return number of idle parsers currently retained.
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Borrow a parser from the pool, the caller has exclusive use of it until it
+     * is passed to {@link #release(JSON5Parser)}.
+     *
+     * @return an idle parser or a new parser if there are none.
+     */
+    public JSON5Parser acquire() {
+        JSON5Parser parser;
+        synchronized (this) {
+            parser = idle.pollLast();
+        }
+        if (null == parser)
+            parser = new JSON5Parser().setSymbolTable(symbols);
+        return parser.setLimits(limits);
+    }
+
+    /**
+     * Return a parser to the pool, the caller must not use it afterwards.
+     *
+     * @param parser a parser obtained from {@link #acquire()}.
+     */
+    public void release(JSON5Parser parser) {
+        if (null == parser)
+            return;
+        parser.setVisitor(null).setProjection(null).setLineIndex(null).setMultiDocument(false)
+                .setLosslessDecimals(false).setPipeline(null).setReadAhead(null);
+        parser.releaseInput();
+        parser.trimBuffers(maxRetainedBuffer);
+        synchronized (this) {
+            if (idle.size() < maxIdle)
+                idle.addLast(parser);
+        }
+    }
+
+    /**
+     * Parse a JSON5 document at the specified path with a pooled parser, see
+     * {@link JSON5Parser#parse(Path)}.
+     *
+     * @param path    location of JSON5 document.
+     * @param visitor visitor to call for each token.
+     * @throws JSON5ParseError if source-text does not conform to JSON5.
+     * @throws IOException     if there was an error reading the file at Path.
+     */
+    public void parse(Path path, JSON5Visitor visitor) throws IOException, JSON5ParseError {
+        JSON5Parser parser = acquire();
+        try {
+            parser.setVisitor(visitor).parse(path);
+        } finally {
+            release(parser);
+        }
+    }
+
+    /**
+     * Parse a JSON5 document from a string with a pooled parser, see
+     * {@link JSON5Parser#parse(String, String)}.
+     *
+     * @param str        string to parse
+     * @param sourceName name of source location used in errors
+     * @param visitor    visitor to call for each token.
+     * @throws JSON5ParseError if a parse error is encountered.
+     */
+    public void parse(String str, String sourceName, JSON5Visitor visitor) throws JSON5ParseError {
+        JSON5Parser parser = acquire();
+        try {
+            parser.setVisitor(visitor).parse(str, sourceName);
+        } finally {
+            release(parser);
+        }
+    }
+
+    /**
+     * Parse a JSON5 document from a byte buffer with a pooled parser, see
+     * {@link JSON5Parser#parse(ByteBuffer, String)}.
+     *
+     * @param utf8       utf8 encoded byte buffer
+     * @param sourceName name of source location used in errors
+     * @param visitor    visitor to call for each token.
+     * @throws JSON5ParseError if a parse error is encountered.
+     */
+    public void parse(ByteBuffer utf8, String sourceName, JSON5Visitor visitor) throws JSON5ParseError {
+        JSON5Parser parser = acquire();
+        try {
+            parser.setVisitor(visitor).parse(utf8, sourceName);
+        } finally {
+            release(parser);
+        }
+    }
+
+    /**
+     * Parse a JSON5 document from a {@code ReadableByteChannel} with a pooled
+     * parser, see {@link JSON5Parser#parse(ReadableByteChannel, String, JSON5Location.Read)}.
+     *
+     * @param in         required ReadableByteChannel
+     * @param sourceName optional name of source text location (for better errors).
+     * @param readSource optional function for obtaining source-text error message.
+     * @param visitor    visitor to call for each token.
+     * @throws JSON5ParseError if source-text does not conform to JSON5.
+     * @throws IOException     if {@code in} encounters an error reading.
+     */
+    public void parse(ReadableByteChannel in, String sourceName, JSON5Location.Read readSource, JSON5Visitor visitor)
+            throws IOException, JSON5ParseError {
+        JSON5Parser parser = acquire();
+        try {
+            parser.setVisitor(visitor).parse(in, sourceName, readSource);
+        } finally {
+            release(parser);
+        }
+    }
+}
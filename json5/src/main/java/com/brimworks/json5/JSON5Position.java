@@ -0,0 +1,114 @@
+package com.brimworks.json5;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A cheap snapshot of a location within the input, see
+ * {@link JSON5Parser#getPosition(int, long)}. Unlike a {@link JSON5Location},
+ * the path is not copied: positions share the unchanged prefix of their path
+ * with earlier positions, so visitors can record a position for every value
+ * and only expand the ones needed for diagnostics via {@link #toLocation()}.
+ *
+ * Positions are immutable, so they may be retained after the parse completes.
+ */
+public final class JSON5Position {
+    /**
+     * Element of a persistent (immutable, shared) stack of path entries.
+     */
+    static final class Node {
+        private final Node parent;
+        private final int depth;
+        // Null for an array index:
+        private final JSON5Key key;
+        private final int index;
+
+        Node(Node parent, JSON5Key key, int index) {
+            this.parent = parent;
+            this.depth = null == parent ? 1 : parent.depth + 1;
+            this.key = key;
+            this.index = index;
+        }
+
+        /**
+         * @return true if this node represents the object key or array index.
+         */
+        boolean matches(Node parent, JSON5Key key, int index) {
+            return this.parent == parent && this.key == key && (null != key || this.index == index);
+        }
+    }
+
+    private final int lineNumber;
+    private final long byteOffset;
+    // Offset of the start of the line, -1 if unknown:
+    private final long lineStart;
+    private final String sourceName;
+    private final JSON5Location.Read readSource;
+    private final Node path;
+
+    JSON5Position(int lineNumber, long byteOffset, long lineStart, String sourceName, JSON5Location.Read readSource,
+            Node path) {
+        this.lineNumber = lineNumber;
+        this.byteOffset = byteOffset;
+        this.lineStart = lineStart;
+        this.sourceName = sourceName;
+        this.readSource = readSource;
+        this.path = path;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public long getByteOffset() {
+        return byteOffset;
+    }
+
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * @return a new list of the keys (or indices) leading to this position.
+     */
+    public List<JSON5Key> getPath() {
+        if (null == path)
+            return Collections.emptyList();
+        JSON5Key[] keys = new JSON5Key[path.depth];
+        for (Node node = path; null != node; node = node.parent) {
+            keys[node.depth - 1] = null == node.key ? new JSON5Key(node.index) : node.key;
+        }
+        List<JSON5Key> list = new ArrayList<>(keys.length);
+        Collections.addAll(list, keys);
+        return list;
+    }
+
+    /**
+     * Expand into a full location, which can display the source-text.
+     *
+     * @return a new {@code JSON5Location} for this position.
+     */
+    public JSON5Location toLocation() {
+        return new JSON5Location(lineNumber, byteOffset, lineStart, sourceName, getPath(), readSource);
+    }
+
+    /**
+     * @return the source name, line number and path of this position.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(sourceName).append(":").append(lineNumber).append(": /");
+        boolean isFirst = true;
+        for (JSON5Key key : getPath()) {
+            if (isFirst) {
+                isFirst = false;
+            } else {
+                sb.append("/");
+            }
+            sb.append(key.toString());
+        }
+        return sb.toString();
+    }
+}
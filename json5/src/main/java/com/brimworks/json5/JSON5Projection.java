@@ -0,0 +1,197 @@
+package com.brimworks.json5;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of paths to project out of a document, see
+ * {@link JSON5Parser#setProjection(JSON5Projection)}. Paths use the same syntax
+ * as the location of a {@link JSON5ParseError}: keys (or array indices) separated
+ * by "/", where "~" escapes the next character (as done by
+ * {@link JSON5Key#toString()}). A "*" matches any key or index, use "~*" to
+ * match a literal "*" key. For example, <code>"/users/&#42;/name"</code> selects
+ * the name of every user, and {@code "/"} selects the whole document.
+ *
+ * Projections are immutable, so they may be shared between parsers.
+ */
+public final class JSON5Projection {
+    /**
+     * Node of a trie of path segments, wildcards are merged into their siblings so
+     * that matching never has to consider more than one node.
+     */
+    static final class Node {
+        private boolean selected;
+        private final Map<String, Node> keys = new HashMap<>();
+        private Node any;
+        // Keys which are also valid array indices:
+        private int[] indices = new int[0];
+        private Node[] indexNodes = new Node[0];
+
+        /**
+         * @return true if the entire subtree at this node is selected.
+         */
+        boolean isSelected() {
+            return selected;
+        }
+
+        /**
+         * @return node for the value of an object key, or null if the value is not
+         *         projected.
+         */
+        Node key(String key) {
+            Node node = keys.get(key);
+            return null == node ? any : node;
+        }
+
+        /**
+         * @return node for an array element, or null if the element is not
+         *         projected.
+         */
+        Node index(int index) {
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] == index)
+                    return indexNodes[i];
+            }
+            return any;
+        }
+
+        private Node child(String segment) {
+            if (null == segment) {
+                if (null == any)
+                    any = new Node();
+                return any;
+            }
+            return keys.computeIfAbsent(segment, k -> new Node());
+        }
+
+        private void merge(Node other) {
+            selected |= other.selected;
+            for (Map.Entry<String, Node> entry : other.keys.entrySet()) {
+                child(entry.getKey()).merge(entry.getValue());
+            }
+            if (null != other.any)
+                child(null).merge(other.any);
+        }
+
+        private void resolve() {
+            List<Integer> indexList = new ArrayList<>();
+            List<Node> nodeList = new ArrayList<>();
+            for (Map.Entry<String, Node> entry : keys.entrySet()) {
+                // A key also matches anything the wildcard matches:
+                if (null != any)
+                    entry.getValue().merge(any);
+                entry.getValue().resolve();
+                int index = parseIndex(entry.getKey());
+                if (index >= 0) {
+                    indexList.add(index);
+                    nodeList.add(entry.getValue());
+                }
+            }
+            if (null != any)
+                any.resolve();
+            indices = new int[indexList.size()];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = indexList.get(i);
+            }
+            indexNodes = nodeList.toArray(new Node[0]);
+        }
+    }
+
+    private final Node root = new Node();
+    private final List<String> paths;
+
+    /**
+     * Create a projection.
+     *
+     * @param paths the paths to select.
+     */
+    public JSON5Projection(String... paths) {
+        this(Arrays.asList(paths));
+    }
+
+    /**
+     * Create a projection.
+     *
+     * @param paths the paths to select.
+     */
+    public JSON5Projection(Collection<String> paths) {
+        this.paths = new ArrayList<>(paths);
+        for (String path : this.paths) {
+            Node node = root;
+            for (String segment : parse(path)) {
+                node = node.child(segment);
+            }
+            node.selected = true;
+        }
+        root.resolve();
+    }
+
+    /**
+     * @return the paths selected by this projection.
+     */
+    public List<String> getPaths() {
+        return Collections.unmodifiableList(paths);
+    }
+
+    Node getRoot() {
+        return root;
+    }
+
+    @Override
+    public String toString() {
+        return paths.toString();
+    }
+
+    // Split into segments, with null representing a wildcard:
+    private static List<String> parse(String path) {
+        if (null == path)
+            throw new NullPointerException("Unexpected null path");
+        List<String> segments = new ArrayList<>();
+        if (path.isEmpty() || "/".equals(path))
+            return segments;
+        if ('/' != path.charAt(0))
+            throw new IllegalArgumentException("Expected path to begin with '/', got " + path);
+        StringBuilder segment = new StringBuilder();
+        boolean literal = false;
+        for (int i = 1; i < path.length(); i++) {
+            char ch = path.charAt(i);
+            if ('/' == ch) {
+                segments.add(segment(segment, literal));
+                segment.setLength(0);
+                literal = false;
+                continue;
+            }
+            if ('~' == ch && i + 1 < path.length()) {
+                ch = path.charAt(++i);
+                literal = true;
+            }
+            segment.append(ch);
+        }
+        segments.add(segment(segment, literal));
+        return segments;
+    }
+
+    private static String segment(StringBuilder segment, boolean literal) {
+        String str = segment.toString();
+        return !literal && "*".equals(str) ? null : str;
+    }
+
+    // Returns -1 if the key is not a canonical array index:
+    private static int parseIndex(String key) {
+        if (key.isEmpty() || key.length() > 9 || (key.length() > 1 && '0' == key.charAt(0)))
+            return -1;
+        int index = 0;
+        for (int i = 0; i < key.length(); i++) {
+            char ch = key.charAt(i);
+            if (ch < '0' || ch > '9')
+                return -1;
+            index = index * 10 + ch - '0';
+        }
+        return index;
+    }
+}
@@ -0,0 +1,595 @@
+package com.brimworks.json5;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pull style alternative to {@link JSON5Visitor}: rather than having the
+ * parser call into a visitor, the caller asks for the next token. Obtain an
+ * instance via one of the {@code JSON5Parser.reader()} methods, for example:
+ *
+ * <pre>
+ * JSON5Reader reader = new JSON5Parser().reader(str, "example");
+ * while (reader.nextToken() != JSON5Reader.Token.END_OF_STREAM) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * The input is fed to the same lexer used by {@link JSON5Parser} a small window
+ * at a time, and the reader passes each token straight on to the grammar
+ * validation of the parser, so a {@link JSON5ParseError} is only thrown once
+ * all the valid tokens before the error have been read. Strings and numbers
+ * which don't fit in a long or double are only converted when
+ * {@link #getString()} or one of the number getters is called, and
+ * {@link #skipChildren()} lets the lexer discard the rest of the container.
+ * Instances are not thread safe.
+ */
+public class JSON5Reader implements Closeable {
+    private static final int WINDOW_SIZE = 4 * 1024;
+    // Types of values, which are either converted:
+    private static final byte LONG = 0;
+    private static final byte DOUBLE = 1;
+    private static final byte OBJECT = 2;
+    // Or raw input, between values (the begin) and ends:
+    private static final byte RAW_STRING = 3;
+    private static final byte RAW_BIG_INTEGER = 4;
+    private static final byte RAW_BIG_DECIMAL = 5;
+
+    /**
+     * The type of token most recently returned by {@link #nextToken()}.
+     */
+    public enum Token {
+        START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, KEY, STRING, NUMBER, BOOLEAN, NULL, END_OF_STREAM;
+    }
+
+    private final JSON5Parser parser;
+    // Validates each token before it is queued:
+    private final JSON5Lexer.Visitor grammar;
+
+    // Input is either a buffer or a channel:
+    private ByteBuffer window;
+    private int limit;
+    private int windowSize = WINDOW_SIZE;
+    private ReadableByteChannel in;
+    private boolean closeIn;
+    private ByteBuffer buff;
+    private boolean lexedEof = false;
+    private JSON5ParseError pending;
+
+    // Tokens which have been lexed, but not yet read:
+    private Token[] tokens = new Token[64];
+    private byte[] types = new byte[64];
+    private long[] values = new long[64];
+    private int[] ends = new int[64];
+    private Object[] objects = new Object[64];
+    private int[] lines = new int[64];
+    private long[] offsets = new long[64];
+    private int head = 0;
+    private int tail = 0;
+    private int current = -1;
+    private Token token = null;
+
+    // Path of the current token, keys is null for arrays:
+    private String[] keys = new String[16];
+    private int[] indices = new int[16];
+    private int depth = 0;
+
+    // Decodes raw strings:
+    private final JSON5StringView rawString = new JSON5StringView();
+
+    private JSON5Reader(JSON5Parser parser) {
+        this.parser = parser;
+        this.grammar = parser.redirectTokens(new Tokens());
+    }
+
+    JSON5Reader(JSON5Parser parser, ByteBuffer utf8) {
+        this(parser);
+        this.window = utf8.duplicate();
+        this.limit = window.limit();
+    }
+
+    JSON5Reader(JSON5Parser parser, ReadableByteChannel in, boolean closeIn) {
+        this(parser);
+        this.in = in;
+        this.closeIn = closeIn;
+        this.buff = ByteBuffer.allocate(8 * 1024);
+        // Kept ready for reading, so the bytes of queued tokens are not moved:
+        buff.flip();
+    }
+
+    /**
+     * Advance to the next token.
+     *
+     * @return the token found, once the end of the input is reached this
+     *         returns {@link Token#END_OF_STREAM} indefinitely.
+     * @throws IOException     if the underlying channel could not be read.
+     * @throws JSON5ParseError if source-text does not conform to JSON5.
+     */
+    public Token nextToken() throws IOException, JSON5ParseError {
+        if (head == tail) {
+            if (Token.END_OF_STREAM == token)
+                return token;
+            fill();
+        }
+        current = head++;
+        token = tokens[current];
+        switch (token) {
+            case START_OBJECT:
+                beforeValue();
+                push("");
+                break;
+            case START_ARRAY:
+                beforeValue();
+                push(null);
+                break;
+            case END_OBJECT:
+            case END_ARRAY:
+                depth--;
+                break;
+            case KEY:
+                keys[depth - 1] = (String) objects[current];
+                break;
+            case END_OF_STREAM:
+                break;
+            default:
+                beforeValue();
+        }
+        return token;
+    }
+
+    /**
+     * Obtain the token most recently returned by {@link #nextToken()}.
+     *
+     * @return the current token or null if {@code nextToken()} was never called.
+     */
+    public Token getToken() {
+        return token;
+    }
+
+    /**
+     * If the current token is {@link Token#START_OBJECT} or
+     * {@link Token#START_ARRAY}, skip all tokens up to and including the matching
+     * end token, which becomes the current token. Otherwise this does nothing.
+     * The skipped input is still validated, but the lexer does not accumulate
+     * the strings or numbers within it.
+     *
+     * @throws IOException     if the underlying channel could not be read.
+     * @throws JSON5ParseError if source-text does not conform to JSON5.
+     */
+    public void skipChildren() throws IOException, JSON5ParseError {
+        if (Token.START_OBJECT != token && Token.START_ARRAY != token)
+            return;
+        // Drop the tokens which were already lexed:
+        int open = 1;
+        for (; head < tail; head++) {
+            switch (tokens[head]) {
+                case START_OBJECT:
+                case START_ARRAY:
+                    open++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    if (0 == --open) {
+                        nextToken();
+                        return;
+                    }
+                    break;
+                default:
+            }
+        }
+        if (!lexedEof)
+            parser.skipChildren(open);
+        nextToken();
+    }
+
+    /**
+     * Obtain the value of a {@link Token#STRING} or {@link Token#KEY}.
+     *
+     * @return the string value
+     * @throws IllegalStateException if the current token is not a string or key.
+     */
+    public String getString() {
+        if (Token.STRING != token && Token.KEY != token)
+            throw notA("string");
+        if (RAW_STRING == types[current]) {
+            rawString.set((ByteBuffer) objects[current], (int) values[current], ends[current]);
+            objects[current] = rawString.toString();
+            types[current] = OBJECT;
+            rawString.clear();
+        }
+        return (String) objects[current];
+    }
+
+    /**
+     * Obtain the value of a {@link Token#NUMBER}.
+     *
+     * @return the number value, one of {@link Long}, {@link Double},
+     *         {@link BigInteger} or {@link BigDecimal}.
+     * @throws IllegalStateException if the current token is not a number.
+     */
+    public Number getNumber() {
+        if (Token.NUMBER != token)
+            throw notA("number");
+        switch (types[current]) {
+            case LONG:
+                return values[current];
+            case DOUBLE:
+                return Double.longBitsToDouble(values[current]);
+            case OBJECT:
+                return (Number) objects[current];
+            default:
+                Number val = convertNumber();
+                objects[current] = val;
+                types[current] = OBJECT;
+                return val;
+        }
+    }
+
+    /**
+     * Obtain the value of a {@link Token#NUMBER} as a long, narrowing it as per
+     * {@link Number#longValue()} if necessary.
+     *
+     * @return the number value
+     * @throws IllegalStateException if the current token is not a number.
+     */
+    public long getLong() {
+        if (Token.NUMBER != token)
+            throw notA("number");
+        switch (types[current]) {
+            case LONG:
+                return values[current];
+            case DOUBLE:
+                return (long) Double.longBitsToDouble(values[current]);
+            default:
+                return getNumber().longValue();
+        }
+    }
+
+    /**
+     * Obtain the value of a {@link Token#NUMBER} as a double, narrowing it as per
+     * {@link Number#doubleValue()} if necessary.
+     *
+     * @return the number value
+     * @throws IllegalStateException if the current token is not a number.
+     */
+    public double getDouble() {
+        if (Token.NUMBER != token)
+            throw notA("number");
+        switch (types[current]) {
+            case LONG:
+                return values[current];
+            case DOUBLE:
+                return Double.longBitsToDouble(values[current]);
+            default:
+                return getNumber().doubleValue();
+        }
+    }
+
+    /**
+     * Obtain the value of a {@link Token#BOOLEAN}.
+     *
+     * @return the boolean value
+     * @throws IllegalStateException if the current token is not a boolean.
+     */
+    public boolean getBoolean() {
+        if (Token.BOOLEAN != token)
+            throw notA("boolean");
+        return 0 != values[current];
+    }
+
+    /**
+     * @return source-input line of the current token.
+     */
+    public int getLine() {
+        return current < 0 ? 1 : lines[current];
+    }
+
+    /**
+     * @return source-input byte offset from beginning of stream of the current
+     *         token.
+     */
+    public long getOffset() {
+        return current < 0 ? 0 : offsets[current];
+    }
+
+    /**
+     * Obtain the location of the current token, useful for reporting errors. The
+     * path identifies the current value, so for a {@link Token#KEY} it includes
+     * the key.
+     *
+     * @return a new {@code JSON5Location} which will display source-text messages.
+     */
+    public JSON5Location getLocation() {
+        int size = Token.START_OBJECT == token || Token.START_ARRAY == token ? depth - 1 : depth;
+        List<JSON5Key> path = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            path.add(null == keys[i] ? new JSON5Key(Math.max(0, indices[i])) : new JSON5Key(keys[i]));
+        }
+        return new JSON5Location(getLine(), getOffset(), parser.getSourceName(), path, parser.getReadSource());
+    }
+
+    /**
+     * Close the underlying channel if it was opened by this reader.
+     *
+     * @throws IOException if the channel could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closeIn) {
+            closeIn = false;
+            in.close();
+        }
+    }
+
+    private IllegalStateException notA(String type) {
+        return new IllegalStateException("Expected current token to be a " + type + ", but got " + token);
+    }
+
+    // The raw input of the current number, which is always ASCII:
+    private String rawText() {
+        ByteBuffer data = (ByteBuffer) objects[current];
+        int begin = (int) values[current];
+        char[] chars = new char[ends[current] - begin];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (data.get(begin + i) & 0xff);
+        }
+        return new String(chars);
+    }
+
+    private Number convertNumber() {
+        String text = rawText();
+        if (RAW_BIG_DECIMAL == types[current])
+            return new BigDecimal(text);
+        int start = '-' == text.charAt(0) || '+' == text.charAt(0) ? 1 : 0;
+        if (text.regionMatches(true, start, "0x", 0, 2)) {
+            BigInteger val = new BigInteger(text.substring(start + 2), 16);
+            return '-' == text.charAt(0) ? val.negate() : val;
+        }
+        return new BigDecimal(text).toBigInteger();
+    }
+
+    private void beforeValue() {
+        if (depth > 0 && null == keys[depth - 1])
+            indices[depth - 1]++;
+    }
+
+    private void push(String key) {
+        if (depth == keys.length) {
+            keys = Arrays.copyOf(keys, depth * 2);
+            indices = Arrays.copyOf(indices, depth * 2);
+        }
+        keys[depth] = key;
+        indices[depth] = -1;
+        depth++;
+    }
+
+    // Lex input until at least one token is available.
+    private void fill() throws IOException {
+        head = tail = 0;
+        while (tail == 0) {
+            if (null != pending)
+                throw pending;
+            if (lexedEof)
+                throw new IllegalStateException("Expected end of stream token before running out of input");
+            try {
+                if (null == in) {
+                    fillFromBuffer();
+                } else {
+                    fillFromChannel();
+                }
+            } catch (JSON5ParseError ex) {
+                // Defer until all the valid tokens have been consumed:
+                pending = ex;
+                lexedEof = true;
+            }
+        }
+    }
+
+    private void fillFromBuffer() {
+        int end = (int) Math.min((long) window.position() + windowSize, limit);
+        boolean eof = end == limit;
+        window.limit(end);
+        if (eof) {
+            lexedEof = true;
+            parser.lex(window, true);
+        } else if (!parser.lex(window, false)) {
+            // Token is larger than the window:
+            windowSize *= 2;
+        }
+    }
+
+    // Only compacts once the previous tokens were read, since their raw values
+    // refer to the buffer:
+    private void fillFromChannel() throws IOException {
+        buff.compact();
+        boolean eof = in.read(buff) <= 0;
+        buff.flip();
+        if (eof) {
+            lexedEof = true;
+            parser.lex(buff, true);
+        } else if (!parser.lex(buff, false) && buff.limit() == buff.capacity()) {
+            // Token is larger than the buffer:
+            ByteBuffer fresh = ByteBuffer.allocate(buff.capacity() * 2);
+            fresh.put(buff);
+            fresh.flip();
+            buff = fresh;
+        }
+    }
+
+    private int add(Token token, int line, long offset) {
+        if (tail == tokens.length) {
+            int size = tail * 2;
+            tokens = Arrays.copyOf(tokens, size);
+            types = Arrays.copyOf(types, size);
+            values = Arrays.copyOf(values, size);
+            ends = Arrays.copyOf(ends, size);
+            objects = Arrays.copyOf(objects, size);
+            lines = Arrays.copyOf(lines, size);
+            offsets = Arrays.copyOf(offsets, size);
+        }
+        tokens[tail] = token;
+        objects[tail] = null;
+        lines[tail] = line;
+        offsets[tail] = offset;
+        return tail++;
+    }
+
+    private void addString(Token token, JSON5StringView val, int line, long offset) {
+        int idx = add(token, line, offset);
+        ByteBuffer raw = val.getRawData();
+        if (null == raw) {
+            // Decoded into a buffer which the lexer reuses:
+            types[idx] = OBJECT;
+            objects[idx] = val.toString();
+        } else {
+            types[idx] = RAW_STRING;
+            objects[idx] = raw;
+            values[idx] = val.getRawBegin();
+            ends[idx] = val.getRawEnd();
+        }
+    }
+
+    /**
+     * Receives the tokens from the lexer, passes each one to the grammar and then
+     * queues it, unless it is within a subtree which is being skipped.
+     */
+    private class Tokens implements JSON5Lexer.Visitor {
+        @Override
+        public void visitNull(int line, long offset) {
+            grammar.visitNull(line, offset);
+            if (!parser.isSkipping())
+                add(Token.NULL, line, offset);
+        }
+
+        @Override
+        public void visit(boolean val, int line, long offset) {
+            grammar.visit(val, line, offset);
+            if (!parser.isSkipping()) {
+                int idx = add(Token.BOOLEAN, line, offset);
+                values[idx] = val ? 1 : 0;
+            }
+        }
+
+        @Override
+        public void visit(JSON5StringView val, int line, long offset) {
+            grammar.visit(val, line, offset);
+            if (parser.isSkipping())
+                return;
+            // Keys are needed for the path, and the grammar already interned them:
+            String key = parser.getLastKey();
+            if (null == key) {
+                addString(Token.STRING, val, line, offset);
+            } else {
+                int idx = add(Token.KEY, line, offset);
+                types[idx] = OBJECT;
+                objects[idx] = key;
+            }
+        }
+
+        @Override
+        public void visitNumber(JSON5NumberView val, int line, long offset) {
+            grammar.visitNumber(val, line, offset);
+            if (parser.isSkipping())
+                return;
+            int idx = add(Token.NUMBER, line, offset);
+            switch (val.getKind()) {
+                case LONG:
+                    // Accumulated by the lexer, so there is nothing to convert:
+                    types[idx] = LONG;
+                    values[idx] = val.longValue();
+                    return;
+                case BIG_INTEGER:
+                    types[idx] = RAW_BIG_INTEGER;
+                    break;
+                case BIG_DECIMAL:
+                    types[idx] = RAW_BIG_DECIMAL;
+                    break;
+                default:
+                    // Converted from the accumulated significand without allocating:
+                    types[idx] = DOUBLE;
+                    values[idx] = Double.doubleToRawLongBits(val.doubleValue());
+                    return;
+            }
+            objects[idx] = val.getRawData();
+            values[idx] = val.getRawBegin();
+            ends[idx] = val.getRawEnd();
+        }
+
+        @Override
+        public void startObject(int line, long offset) {
+            grammar.startObject(line, offset);
+            if (!parser.isSkipping())
+                add(Token.START_OBJECT, line, offset);
+        }
+
+        @Override
+        public void endObject(int line, long offset) {
+            grammar.endObject(line, offset);
+            // The end of a skipped container is queued:
+            if (!parser.isSkipping())
+                add(Token.END_OBJECT, line, offset);
+        }
+
+        @Override
+        public void startArray(int line, long offset) {
+            grammar.startArray(line, offset);
+            if (!parser.isSkipping())
+                add(Token.START_ARRAY, line, offset);
+        }
+
+        @Override
+        public void endArray(int line, long offset) {
+            grammar.endArray(line, offset);
+            if (!parser.isSkipping())
+                add(Token.END_ARRAY, line, offset);
+        }
+
+        @Override
+        public void visitComment(String comment, int line, long offset) {
+            grammar.visitComment(comment, line, offset);
+        }
+
+        @Override
+        public void visitSpace(String space, int line, long offset) {
+            grammar.visitSpace(space, line, offset);
+        }
+
+        @Override
+        public void visitColon(int line, long offset) {
+            grammar.visitColon(line, offset);
+        }
+
+        @Override
+        public void visitComma(int line, long offset) {
+            grammar.visitComma(line, offset);
+        }
+
+        @Override
+        public void endOfStream(int line, long offset) {
+            grammar.endOfStream(line, offset);
+            add(Token.END_OF_STREAM, line, offset);
+        }
+
+        @Override
+        public void unexpectedByte(byte ch, int line, long offset) {
+            grammar.unexpectedByte(ch, line, offset);
+        }
+
+        @Override
+        public void exponentOverflow(int line, long offset) {
+            grammar.exponentOverflow(line, offset);
+        }
+
+        @Override
+        public void limitExceeded(String message, int line, long offset) {
+            grammar.limitExceeded(message, line, offset);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.brimworks.json5;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import com.brimworks.json5.ragel.Ragel;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A reusable view of a string or key value passed to
+ * {@link JSON5Visitor#visit(JSON5StringView, int, long)} and
+ * {@link JSON5Visitor#visitKey(JSON5StringView, int, long)}. The view is only
+ * valid for the duration of the visitor call, since the parser reuses it for the
+ * next string. Use {@link #toString()} to materialize a {@code String} which may
+ * be retained.
+ *
+ * If the string contained no escape sequences, the view is backed directly by the
+ * UTF-8 input and {@link #getRawUTF8()} can be used to obtain those bytes without
+ * any decoding at all.
+ */
+public final class JSON5StringView implements CharSequence {
+    // Raw UTF-8 input, when non-null:
+    private ByteBuffer utf8;
+    private int begin;
+    private int end;
+
+    // Otherwise (or once non-ascii raw input is decoded):
+    private CharBuffer chars;
+    private int length;
+
+    private String string;
+    private CharBuffer decoded;
+    private CharsetDecoder utf8Decoder;
+
+    JSON5StringView() {
+    }
+
+    /**
+     * View a range of raw UTF-8 input.
+     */
+    void set(ByteBuffer data, int begin, int end) {
+        this.utf8 = data;
+        this.begin = begin;
+        this.end = end;
+        this.chars = null;
+        this.string = null;
+        // Computed on demand:
+        this.length = -1;
+    }
+
+    /**
+     * View the first length chars of a buffer.
+     */
+    void set(CharBuffer chars, int length) {
+        this.utf8 = null;
+        this.chars = chars;
+        this.length = length;
+        this.string = null;
+    }
+
+    /**
+     * Reset to an empty string, dropping any reference to the input.
+     */
+    void clear() {
+        set((CharBuffer) null, 0);
+    }
+
+    /**
+     * Release the internal decode buffer if it grew beyond maxCapacity chars.
+     */
+    void trimBuffers(int maxCapacity) {
+        if (null != decoded && decoded.capacity() > maxCapacity) {
+            if (chars == decoded)
+                clear();
+            decoded = null;
+        }
+    }
+
+    /**
+     * Prime the materialized value, used when the value is already known.
+     */
+    void setString(String string) {
+        this.string = string;
+    }
+
+    ByteBuffer getRawData() {
+        return utf8;
+    }
+
+    int getRawBegin() {
+        return begin;
+    }
+
+    int getRawEnd() {
+        return end;
+    }
+
+    /**
+     * Obtain the raw UTF-8 input of this string, which is only possible if the
+     * string was found in the input without any escape sequences.
+     *
+     * @return a read-only buffer with the UTF-8 encoded bytes of this string
+     *         between position and limit, or null if the string was not a single
+     *         range of raw input.
+     */
+    public ByteBuffer getRawUTF8() {
+        if (null == utf8)
+            return null;
+        ByteBuffer slice = utf8.duplicate();
+        slice.limit(end);
+        slice.position(begin);
+        return slice.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Compare the characters of this view to another sequence of characters,
+     * without materializing a {@code String}.
+     *
+     * @param other the sequence to compare to
+     * @return true if this view contains exactly the same characters.
+     */
+    public boolean contentEquals(CharSequence other) {
+        int len = length();
+        if (len != other.length())
+            return false;
+        for (int i = 0; i < len; i++) {
+            if (charAt(i) != other.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        if (length < 0) {
+            // Ascii input can be viewed directly, otherwise decode:
+            length = end - begin;
+            if (Ragel.skipAscii(utf8, begin, end) < end)
+                decode();
+        }
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length())
+            throw new IndexOutOfBoundsException("index=" + index + ", length=" + length);
+        if (null == chars)
+            return (char) utf8.get(begin + index);
+        return chars.get(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    /**
+     * Materialize the value, the result is cached so calling this multiple times
+     * within a visitor call will not allocate more strings.
+     *
+     * @return the value of this view as a string.
+     */
+    @Override
+    public String toString() {
+        if (null != string)
+            return string;
+        if (0 == length) {
+            string = "";
+        } else if (null != chars) {
+            string = chars.hasArray() ? new String(chars.array(), chars.arrayOffset(), length)
+                    : ((CharBuffer) chars.duplicate().position(0).limit(length)).toString();
+        } else if (utf8.hasArray()) {
+            string = new String(utf8.array(), utf8.arrayOffset() + begin, end - begin, UTF_8);
+        } else {
+            byte[] bytes = new byte[end - begin];
+            ByteBuffer slice = utf8.duplicate();
+            slice.position(begin);
+            slice.get(bytes);
+            string = new String(bytes, UTF_8);
+        }
+        return string;
+    }
+
+    // Decode non-ascii raw input into an internal buffer.
+    private void decode() {
+        if (null == utf8Decoder) {
+            utf8Decoder = UTF_8.newDecoder().onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .onMalformedInput(CodingErrorAction.REPLACE);
+        }
+        if (null == decoded || decoded.capacity() < end - begin)
+            decoded = CharBuffer.allocate(Math.max(end - begin, 256));
+        ByteBuffer slice = utf8.duplicate();
+        slice.limit(end);
+        slice.position(begin);
+        decoded.clear();
+        utf8Decoder.reset();
+        // UTF-8 never decodes to more chars than bytes, so this will not overflow:
+        CoderResult result = utf8Decoder.decode(slice, decoded, true);
+        if (result.isOverflow())
+            throw new AssertionError("Unexpected overflow decoding UTF-8");
+        utf8Decoder.flush(decoded);
+        chars = decoded;
+        length = decoded.position();
+    }
+}
@@ -0,0 +1,311 @@
+package com.brimworks.json5;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Finds the boundaries of values within UTF-8 input without lexing it, so the
+ * input can be split between threads: {@link JSON5ParallelParser} uses it to
+ * find the elements of a root array, and {@link JSON5LinesExecutor} to find
+ * where the records of a batch end. The offsets of the structural characters
+ * ({@code {}[],:}) and the opening quote of every string are recorded.
+ * Characters within strings and comments are not structural. The input is
+ * examined 8 bytes at a time, and only the bytes which may change the scanner
+ * state (quotes, backslashes, comment delimiters, ...) are looked at
+ * individually, so long strings and comments are skipped over quickly.
+ *
+ * The lexer does not consume this index: each split is still lexed in full by
+ * a {@link JSON5Parser}, so this makes a lexer-bound parse faster only by
+ * spreading it over more threads, not by making a single thread faster.
+ *
+ * The input is NOT validated: for malformed input the index is meaningless, so
+ * it should only be relied upon for input which is also parsed by a
+ * {@link JSON5Parser}.
+ *
+ * An index may be reused, but it is not thread safe.
+ */
+public final class JSON5StructuralIndex {
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+    private static final long CASE = 0x2020202020202020L;
+
+    // Scanner modes:
+    static final int STRUCTURE = 0;
+    static final int DOUBLE_QUOTED = 1;
+    static final int SINGLE_QUOTED = 2;
+    static final int LINE_COMMENT = 3;
+    static final int BLOCK_COMMENT = 4;
+
+    private int[] offsets = new int[256];
+    private int size;
+
+    // Results of scan(), used for splitting input between threads:
+    // Line of each offset relative to the start of the scan, if counting lines:
+    private int[] lines = new int[256];
+    private int lineCount;
+    // Where the scan stopped (which may be past the end) and the mode at that point:
+    private int stop;
+    private int mode;
+    // Offset after the last LF outside of everything opened in the scan, and the
+    // lines terminated before it, if counting lines:
+    private int lineEnd;
+    private int lineEndCount;
+
+    /**
+     * Replace the content of this index with the structural characters found
+     * between the position and limit of the data. The position and limit of the
+     * data are not modified.
+     *
+     * @param data UTF-8 encoded input.
+     * @return this
+     */
+    public JSON5StructuralIndex index(ByteBuffer data) {
+        return scan(data, data.position(), data.limit(), STRUCTURE, false);
+    }
+
+    /**
+     * Replace the content of this index with the structural characters which
+     * begin between begin and end, assuming the scanner is in the specified mode
+     * at begin. Bytes up to the limit of the data may be examined to complete the
+     * last character.
+     *
+     * @param countLines also count the line terminators outside of block
+     *                   comments, which is how the lexer counts lines.
+     */
+    JSON5StructuralIndex scan(ByteBuffer data, int begin, int end, int mode, boolean countLines) {
+        return scan(data, begin, end, mode, countLines, true);
+    }
+
+    /**
+     * Count the lines between begin and end, and find where the input may be
+     * split between records (see {@link #getLineEnd()}), assuming begin is
+     * between records. The structural characters are not recorded, so
+     * {@link #size()} is 0 afterwards.
+     */
+    JSON5StructuralIndex scanLines(ByteBuffer data, int begin, int end) {
+        return scan(data, begin, end, STRUCTURE, true, false);
+    }
+
+    private JSON5StructuralIndex scan(ByteBuffer data, int begin, int end, int mode, boolean countLines,
+            boolean record) {
+        ByteBuffer words = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int limit = data.limit();
+        int p = begin;
+        int line = 0;
+        // Containers opened within the scan, which never goes below 0:
+        int depth = 0;
+        int lineEnd = begin;
+        int lineEndCount = 0;
+        size = 0;
+        while ((p = next(words, p, end, mode, countLines)) < end) {
+            int ch = words.get(p) & 0xff;
+            if (countLines && BLOCK_COMMENT != mode && isLineEnd(words, p, limit))
+                line++;
+            switch (mode) {
+            case STRUCTURE:
+                if ('"' == ch) {
+                    mode = DOUBLE_QUOTED;
+                } else if ('\'' == ch) {
+                    mode = SINGLE_QUOTED;
+                } else if ('/' == ch) {
+                    if (p + 1 < limit && '/' == words.get(p + 1)) {
+                        mode = LINE_COMMENT;
+                        p++;
+                    } else if (p + 1 < limit && '*' == words.get(p + 1)) {
+                        mode = BLOCK_COMMENT;
+                        p++;
+                    }
+                    break;
+                } else if ('\n' == ch || '\r' == ch || 0xE2 == ch) {
+                    // Only a candidate when counting lines:
+                    if ('\n' == ch && 0 == depth) {
+                        lineEnd = p + 1;
+                        lineEndCount = line;
+                    }
+                    break;
+                } else if ('{' == (ch | 0x20)) {
+                    depth++;
+                } else if ('}' == (ch | 0x20) && depth > 0) {
+                    depth--;
+                }
+                if (record)
+                    add(p, line);
+                break;
+            case DOUBLE_QUOTED:
+            case SINGLE_QUOTED:
+                if ('\\' == ch) {
+                    // Skip the escaped character, which may be a line continuation:
+                    p++;
+                    if (countLines && p < limit && isLineEnd(words, p, limit))
+                        line++;
+                } else if ((DOUBLE_QUOTED == mode ? '"' : '\'') == ch) {
+                    mode = STRUCTURE;
+                }
+                break;
+            case LINE_COMMENT:
+                if ('\r' == ch || isLineEnd(words, p, limit))
+                    mode = STRUCTURE;
+                if (countLines && '\n' == ch && 0 == depth) {
+                    lineEnd = p + 1;
+                    lineEndCount = line;
+                }
+                break;
+            case BLOCK_COMMENT:
+                if (p + 1 < limit && '/' == words.get(p + 1)) {
+                    mode = STRUCTURE;
+                    p++;
+                }
+                break;
+            default:
+                throw new AssertionError("Unknown mode=" + mode);
+            }
+            p++;
+        }
+        this.stop = p;
+        this.mode = mode;
+        this.lineCount = line;
+        this.lineEnd = lineEnd;
+        this.lineEndCount = lineEndCount;
+        return this;
+    }
+
+    /**
+     * @return the number of structural characters found.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param idx index of the structural character, starting at 0.
+     * @return the offset of the structural character within the data buffer.
+     * @throws IndexOutOfBoundsException if {@code idx} is not less than
+     *                                   {@link #size()}.
+     */
+    public int getOffset(int idx) {
+        if (idx < 0 || idx >= size)
+            throw new IndexOutOfBoundsException("Index " + idx + " is not within [0, " + size + ")");
+        return offsets[idx];
+    }
+
+    /**
+     * @return the line of a structural character relative to the start of the
+     *         scan, only valid if lines were counted.
+     */
+    int getLine(int idx) {
+        return lines[idx];
+    }
+
+    /**
+     * @return the number of lines terminated in the scan, only valid if lines were
+     *         counted.
+     */
+    int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return the offset after the last LF which is outside of any string,
+     *         comment, object or array opened within the scan, or the begin of
+     *         the scan if there is none. Only valid if lines were counted.
+     */
+    int getLineEnd() {
+        return lineEnd;
+    }
+
+    /**
+     * @return the number of lines terminated before {@link #getLineEnd()}, only
+     *         valid if lines were counted.
+     */
+    int getLineEndCount() {
+        return lineEndCount;
+    }
+
+    /**
+     * @return the offset after the last byte examined by the scan.
+     */
+    int getStop() {
+        return stop;
+    }
+
+    /**
+     * @return the mode of the scanner at {@link #getStop()}.
+     */
+    int getMode() {
+        return mode;
+    }
+
+    private void add(int offset, int line) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, 2 * size);
+            lines = Arrays.copyOf(lines, 2 * size);
+        }
+        lines[size] = line;
+        offsets[size++] = offset;
+    }
+
+    /**
+     * @return true if the byte at p ends a line, a CR followed by LF does not.
+     */
+    private static boolean isLineEnd(ByteBuffer words, int p, int limit) {
+        int ch = words.get(p) & 0xff;
+        if ('\n' == ch)
+            return true;
+        if ('\r' == ch)
+            return p + 1 >= limit || '\n' != words.get(p + 1);
+        // U+2028 and U+2029 are also line terminators:
+        return 0xE2 == ch && p + 2 < limit && (byte) 0x80 == words.get(p + 1) && 0xA8 == (words.get(p + 2) & 0xfe);
+    }
+
+    /**
+     * @return the offset of the next byte which may change the state of the
+     *         scanner in this mode, or {@code max(p, pe)} if there are none.
+     */
+    private static int next(ByteBuffer words, int p, int pe, int mode, boolean countLines) {
+        for (; p + 8 <= pe; p += 8) {
+            long mask = candidates(words.getLong(p), mode, countLines);
+            if (0 != mask)
+                return p + (Long.numberOfTrailingZeros(mask) >>> 3);
+        }
+        for (; p < pe; p++) {
+            if (0 != candidates(words.get(p) & 0xffL, mode, countLines))
+                return p;
+        }
+        return p;
+    }
+
+    /**
+     * @return the high bit of every byte in the (little endian) word which may
+     *         change the state of the scanner in this mode.
+     */
+    private static long candidates(long word, int mode, boolean countLines) {
+        if (countLines && LINE_COMMENT != mode && BLOCK_COMMENT != mode)
+            return candidates(word, mode, false) | eq(word, '\n') | eq(word, '\r') | eq(word, 0xE2);
+        switch (mode) {
+        case STRUCTURE:
+            // Setting 0x20 maps '[' to '{' and ']' to '}':
+            return eq(word | CASE, '{') | eq(word | CASE, '}') | eq(word, ',') | eq(word, ':') | eq(word, '"')
+                    | eq(word, '\'') | eq(word, '/');
+        case DOUBLE_QUOTED:
+            return eq(word, '"') | eq(word, '\\');
+        case SINGLE_QUOTED:
+            return eq(word, '\'') | eq(word, '\\');
+        case LINE_COMMENT:
+            return eq(word, '\n') | eq(word, '\r') | eq(word, 0xE2);
+        case BLOCK_COMMENT:
+            return eq(word, '*');
+        default:
+            throw new AssertionError("Unknown mode=" + mode);
+        }
+    }
+
+    /**
+     * @return the high bit of every byte in the word which equals {@code ch},
+     *         without carries between bytes so every bit is exact.
+     */
+    private static long eq(long word, int ch) {
+        long x = word ^ (ONES * ch);
+        return ~(((x & LOW7) + LOW7) | x | LOW7);
+    }
+}
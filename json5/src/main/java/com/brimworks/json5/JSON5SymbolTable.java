@@ -0,0 +1,178 @@
+package com.brimworks.json5;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Bounded table of object keys, keyed by the raw UTF-8 bytes of the key found in
+ * the input. When a key repeats (as it does in arrays of records) the canonical
+ * {@code String} is returned without decoding or allocating, which also allows
+ * consumers to compare keys by identity.
+ *
+ * Every {@link JSON5Parser} has its own table by default, but a table may be
+ * shared between parsers (even concurrently) via
+ * {@link JSON5Parser#setSymbolTable(JSON5SymbolTable)}. Only keys without escape
+ * sequences and no longer than the max key length are interned. Once the table
+ * is full, new keys replace existing entries, so the memory used is bounded by
+ * the capacity and max key length.
+ */
+public final class JSON5SymbolTable {
+    private static final int MAX_PROBES = 8;
+
+    /**
+     * Entries are immutable, so they can be safely published to other threads
+     * through the racy table.
+     */
+    private static final class Entry {
+        private final byte[] utf8;
+        private final int hash;
+        private final JSON5Key key;
+
+        private Entry(byte[] utf8, int hash, JSON5Key key) {
+            this.utf8 = utf8;
+            this.hash = hash;
+            this.key = key;
+        }
+
+        private boolean matches(ByteBuffer data, int begin, int end) {
+            if (utf8.length != end - begin)
+                return false;
+            for (int i = 0; i < utf8.length; i++) {
+                if (utf8[i] != data.get(begin + i))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private final Entry[] entries;
+    private final int maxKeyLength;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Create a symbol table with room for 1024 keys of up to 128 bytes.
+     */
+    public JSON5SymbolTable() {
+        this(1024, 128);
+    }
+
+    /**
+     * Create a symbol table.
+     *
+     * @param capacity     maximum number of keys, rounded up to a power of two.
+     * @param maxKeyLength maximum length of a key in UTF-8 bytes, longer keys are
+     *                     never interned.
+     */
+    public JSON5SymbolTable(int capacity, int maxKeyLength) {
+        if (capacity <= 0 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Expected capacity in range [1, 2^30], got " + capacity);
+        if (maxKeyLength < 0)
+            throw new IllegalArgumentException("Expected non-negative maxKeyLength, got " + maxKeyLength);
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.entries = new Entry[size];
+        this.maxKeyLength = maxKeyLength;
+    }
+
+    /**
+     * @return number of lookups which returned an existing key.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of lookups which had to decode the key, including keys which
+     *         were too long to be interned.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return maximum number of keys held by this table.
+     */
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    /**
+     * Remove all keys and reset the hit/miss counters.
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    /**
+     * Obtain the canonical key for the raw UTF-8 input of a string view.
+     *
+     * @return the key, or null if the view is not raw input.
+     */
+    JSON5Key lookup(JSON5StringView view) {
+        ByteBuffer data = view.getRawData();
+        if (null == data)
+            return null;
+        return lookup(data, view.getRawBegin(), view.getRawEnd());
+    }
+
+    /**
+     * Obtain the canonical key for the UTF-8 input in data between begin
+     * (inclusive) and end (exclusive).
+     */
+    JSON5Key lookup(ByteBuffer data, int begin, int end) {
+        if (end - begin > maxKeyLength) {
+            misses.increment();
+            return new JSON5Key(decode(data, begin, end));
+        }
+        int hash = hash(data, begin, end);
+        Entry[] entries = this.entries;
+        int mask = entries.length - 1;
+        int free = -1;
+        for (int probe = 0; probe < MAX_PROBES && probe < entries.length; probe++) {
+            int idx = (hash + probe) & mask;
+            Entry entry = entries[idx];
+            if (null == entry) {
+                free = idx;
+                break;
+            }
+            if (entry.hash == hash && entry.matches(data, begin, end)) {
+                hits.increment();
+                return entry.key;
+            }
+        }
+        misses.increment();
+        byte[] utf8 = new byte[end - begin];
+        for (int i = 0; i < utf8.length; i++) {
+            utf8[i] = data.get(begin + i);
+        }
+        Entry entry = new Entry(utf8, hash, new JSON5Key(new String(utf8, UTF_8)));
+        // Evict the entry in the home slot if there is no room:
+        entries[free < 0 ? hash & mask : free] = entry;
+        return entry.key;
+    }
+
+    private static int hash(ByteBuffer data, int begin, int end) {
+        int hash = 0;
+        for (int i = begin; i < end; i++) {
+            hash = 31 * hash + data.get(i);
+        }
+        // Spread the bits, since only the low bits select a slot:
+        return hash ^ (hash >>> 16);
+    }
+
+    private static String decode(ByteBuffer data, int begin, int end) {
+        ByteBuffer slice = data.duplicate();
+        slice.limit(end);
+        slice.position(begin);
+        return UTF_8.decode(slice).toString();
+    }
+}
@@ -0,0 +1,472 @@
+package com.brimworks.json5;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a lexer on another thread, see {@link JSON5Parser#setPipeline(Executor)}.
+ * The lexer (the producer) writes a compact record of every token into a
+ * single-producer single-consumer ring, which the parser (the consumer)
+ * replays into its grammar. Strings with escape sequences are decoded and
+ * numbers are converted by the producer, so only the grammar and the visitor
+ * run on the consumer. Strings without escape sequences (and the raw text of
+ * numbers) are offsets into the input, which must not change until the parse
+ * completes.
+ *
+ * A ring may be reused, but only by one parse at a time.
+ */
+final class JSON5TokenRing implements JSON5Lexer.Visitor {
+    private static final int CAPACITY = 4096;
+    private static final int MASK = CAPACITY - 1;
+    // Positions are published every BATCH records, to share fewer cache lines:
+    private static final int BATCH = 64;
+
+    // Record kinds, numbers are NUMBER + the ordinal of the Kind:
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte RAW_STRING = 3;
+    private static final byte STRING = 4;
+    private static final byte START_OBJECT = 5;
+    private static final byte END_OBJECT = 6;
+    private static final byte START_ARRAY = 7;
+    private static final byte END_ARRAY = 8;
+    private static final byte COMMENT = 9;
+    private static final byte SPACE = 10;
+    private static final byte COLON = 11;
+    private static final byte COMMA = 12;
+    private static final byte END_OF_STREAM = 13;
+    private static final byte UNEXPECTED_BYTE = 14;
+    private static final byte EXPONENT_OVERFLOW = 15;
+    private static final byte FAILURE = 16;
+    private static final byte LIMIT_EXCEEDED = 17;
+    private static final byte NUMBER = 18;
+    private static final JSON5NumberView.Kind[] NUMBER_KINDS = JSON5NumberView.Kind.values();
+
+    /**
+     * Thrown within the producer to stop lexing.
+     */
+    private static final class Stop extends RuntimeException {
+        private Stop() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Stop STOP = new Stop();
+
+    // The records:
+    private final byte[] kinds = new byte[CAPACITY];
+    private final int[] lines = new int[CAPACITY];
+    private final long[] offsets = new long[CAPACITY];
+    // A long, the bits of a double, or a byte:
+    private final long[] values = new long[CAPACITY];
+    // Range of raw input:
+    private final int[] begins = new int[CAPACITY];
+    private final int[] ends = new int[CAPACITY];
+    // A String, BigInteger, BigDecimal or Throwable (or the message of an error):
+    private final Object[] objects = new Object[CAPACITY];
+
+    // Number of records published by the producer, and released by the consumer:
+    private volatile long tail;
+    private volatile long head;
+    // Set by the consumer to stop the producer early:
+    private volatile boolean cancelled;
+    // Cleared by the producer once it has stopped using the ring:
+    private volatile boolean running;
+    // The thread which consumes, and whether the producer ran on it:
+    private Thread consumer;
+    private boolean inline;
+
+    // Producer state:
+    private final JSON5Lexer lexer = new JSON5Lexer(this);
+    private long written;
+    private long knownHead;
+    private boolean convertNumbers;
+    private boolean visitStrings;
+    // Whether each open container is an object, to tell keys from values:
+    private boolean[] inObject = new boolean[64];
+    private int depth;
+
+    // Consumer state:
+    private final JSON5StringView stringView = new JSON5StringView();
+    private final JSON5NumberView numberView = new JSON5NumberView();
+
+    /**
+     * Lex the input on the executor, while replaying the tokens into the grammar
+     * on this thread.
+     *
+     * @param utf8           the input, which is lexed by the producer.
+     * @param executor       runs the producer.
+     * @param grammar        consumes the tokens.
+     * @param trivia         true to record space and comments.
+     * @param visitStrings   true to decode strings which are values, which is
+     *                       not needed if the visitor does not visit them. Keys
+     *                       are always decoded, since the path needs them.
+     * @param convertNumbers true to convert numbers, which is not needed if the
+     *                       visitor does not visit them.
+     * @param lossless       see {@link JSON5Parser#setLosslessDecimals(boolean)}.
+     * @param limits         enforced by the lexer.
+     * @return false if nothing was lexed because the executor ran the producer on
+     *         this thread, which could never make progress once the ring is full.
+     */
+    boolean run(ByteBuffer utf8, Executor executor, JSON5Lexer.Visitor grammar, boolean trivia, boolean visitStrings,
+            boolean convertNumbers, boolean lossless, JSON5Limits limits) {
+        ByteBuffer source = utf8.duplicate();
+        tail = 0;
+        head = 0;
+        written = 0;
+        knownHead = 0;
+        cancelled = false;
+        running = true;
+        consumer = Thread.currentThread();
+        inline = false;
+        this.convertNumbers = convertNumbers;
+        this.visitStrings = visitStrings;
+        depth = 0;
+        lexer.reset();
+        lexer.setTrivia(trivia);
+        lexer.setLosslessDecimals(lossless);
+        lexer.setDiscardingStrings(!visitStrings);
+        lexer.setDiscardingNumbers(!convertNumbers);
+        limits.applyTo(lexer);
+        try {
+            executor.execute(() -> produce(utf8));
+        } catch (RuntimeException | Error ex) {
+            running = false;
+            throw ex;
+        }
+        if (inline)
+            return false;
+        try {
+            consume(source, grammar);
+            return true;
+        } finally {
+            consumer = null;
+            cancelled = true;
+            for (int idle = 0; running; idle++) {
+                idle(idle);
+            }
+            Arrays.fill(objects, null);
+            stringView.clear();
+            numberView.clear();
+            lexer.releaseData();
+        }
+    }
+
+    private void produce(ByteBuffer utf8) {
+        if (consumer == Thread.currentThread()) {
+            inline = true;
+            running = false;
+            return;
+        }
+        try {
+            lexer.lex(utf8, true);
+        } catch (Stop stop) {
+            // The consumer stopped, or the lexer found an error.
+        } catch (Throwable ex) {
+            // Rethrown by the consumer:
+            try {
+                objects[claim()] = ex;
+                commit(FAILURE, 0, 0);
+            } catch (Stop stop) {
+                // The consumer stopped.
+            }
+        } finally {
+            tail = written;
+            running = false;
+        }
+    }
+
+    private void consume(ByteBuffer source, JSON5Lexer.Visitor grammar) {
+        long read = 0;
+        long available = 0;
+        while (true) {
+            if (read == available) {
+                head = read;
+                for (int idle = 0; read == (available = tail); idle++) {
+                    idle(idle);
+                }
+            }
+            int idx = (int) read & MASK;
+            int line = lines[idx];
+            long offset = offsets[idx];
+            byte kind = kinds[idx];
+            switch (kind) {
+            case NULL:
+                grammar.visitNull(line, offset);
+                break;
+            case FALSE:
+            case TRUE:
+                grammar.visit(TRUE == kind, line, offset);
+                break;
+            case RAW_STRING:
+                stringView.set(source, begins[idx], ends[idx]);
+                grammar.visit(stringView, line, offset);
+                break;
+            case STRING:
+                String string = (String) objects[idx];
+                objects[idx] = null;
+                stringView.set(CharBuffer.wrap(string), string.length());
+                stringView.setString(string);
+                grammar.visit(stringView, line, offset);
+                break;
+            case START_OBJECT:
+                grammar.startObject(line, offset);
+                break;
+            case END_OBJECT:
+                grammar.endObject(line, offset);
+                break;
+            case START_ARRAY:
+                grammar.startArray(line, offset);
+                break;
+            case END_ARRAY:
+                grammar.endArray(line, offset);
+                break;
+            case COMMENT:
+                grammar.visitComment((String) objects[idx], line, offset);
+                objects[idx] = null;
+                break;
+            case SPACE:
+                grammar.visitSpace((String) objects[idx], line, offset);
+                objects[idx] = null;
+                break;
+            case COLON:
+                grammar.visitColon(line, offset);
+                break;
+            case COMMA:
+                grammar.visitComma(line, offset);
+                break;
+            case END_OF_STREAM:
+                grammar.endOfStream(line, offset);
+                return;
+            case UNEXPECTED_BYTE:
+                grammar.unexpectedByte((byte) values[idx], line, offset);
+                return;
+            case EXPONENT_OVERFLOW:
+                grammar.exponentOverflow(line, offset);
+                return;
+            case LIMIT_EXCEEDED:
+                grammar.limitExceeded((String) objects[idx], line, offset);
+                return;
+            case FAILURE:
+                Throwable ex = (Throwable) objects[idx];
+                if (ex instanceof RuntimeException)
+                    throw (RuntimeException) ex;
+                if (ex instanceof Error)
+                    throw (Error) ex;
+                throw new IllegalStateException(ex);
+            default:
+                numberView.set(NUMBER_KINDS[kind - NUMBER], source, begins[idx], ends[idx], values[idx],
+                        (Number) objects[idx]);
+                objects[idx] = null;
+                try {
+                    grammar.visitNumber(numberView, line, offset);
+                } finally {
+                    numberView.clear();
+                }
+            }
+            if (0 == (++read & (BATCH - 1)))
+                head = read;
+        }
+    }
+
+    /**
+     * Back off while waiting for the other thread.
+     */
+    private static void idle(int count) {
+        if (count < 16) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    /**
+     * Wait until there is room for another record.
+     *
+     * @return the index of the next record.
+     */
+    private int claim() {
+        if (written - knownHead == CAPACITY) {
+            tail = written;
+            for (int idle = 0; written - (knownHead = head) == CAPACITY; idle++) {
+                if (cancelled)
+                    throw STOP;
+                idle(idle);
+            }
+        }
+        return (int) written & MASK;
+    }
+
+    private void commit(byte kind, int line, long offset) {
+        int idx = (int) written & MASK;
+        kinds[idx] = kind;
+        lines[idx] = line;
+        offsets[idx] = offset;
+        if (0 == (++written & (BATCH - 1))) {
+            if (cancelled)
+                throw STOP;
+            tail = written;
+        }
+    }
+
+    private void record(byte kind, int line, long offset) {
+        claim();
+        commit(kind, line, offset);
+    }
+
+    /**
+     * Let the lexer skip decoding the next string if it is a value which the
+     * visitor will never see, as done by the parser for its own lexer.
+     *
+     * @param isKey true if the next string is an object key.
+     */
+    private void discardUnvisited(boolean isKey) {
+        if (!visitStrings)
+            lexer.setDiscardingStrings(!isKey);
+    }
+
+    private void push(boolean isObject) {
+        if (depth == inObject.length)
+            inObject = Arrays.copyOf(inObject, 2 * depth);
+        inObject[depth++] = isObject;
+        discardUnvisited(isObject);
+    }
+
+    private void pop() {
+        // Unbalanced input is an error found by the consumer:
+        if (depth > 0)
+            depth--;
+    }
+
+    @Override
+    public void visitNull(int line, long offset) {
+        record(NULL, line, offset);
+    }
+
+    @Override
+    public void visit(boolean val, int line, long offset) {
+        record(val ? TRUE : FALSE, line, offset);
+    }
+
+    @Override
+    public void visit(JSON5StringView val, int line, long offset) {
+        int idx = claim();
+        if (null != val.getRawData()) {
+            begins[idx] = val.getRawBegin();
+            ends[idx] = val.getRawEnd();
+            commit(RAW_STRING, line, offset);
+        } else {
+            objects[idx] = val.toString();
+            commit(STRING, line, offset);
+        }
+    }
+
+    @Override
+    public void visitNumber(JSON5NumberView val, int line, long offset) {
+        int idx = claim();
+        JSON5NumberView.Kind kind = val.getKind();
+        begins[idx] = val.getRawBegin();
+        ends[idx] = val.getRawEnd();
+        values[idx] = 0;
+        if (convertNumbers) {
+            switch (kind) {
+            case LONG:
+                values[idx] = val.longValue();
+                break;
+            case BIG_INTEGER:
+                objects[idx] = val.bigIntegerValue();
+                break;
+            case BIG_DECIMAL:
+                objects[idx] = val.bigDecimalValue();
+                break;
+            default:
+                values[idx] = Double.doubleToRawLongBits(val.doubleValue());
+            }
+        } else if (JSON5NumberView.Kind.BIG_INTEGER == kind) {
+            objects[idx] = BigInteger.ZERO;
+        } else if (JSON5NumberView.Kind.BIG_DECIMAL == kind) {
+            objects[idx] = BigDecimal.ZERO;
+        }
+        commit((byte) (NUMBER + kind.ordinal()), line, offset);
+    }
+
+    @Override
+    public void startObject(int line, long offset) {
+        push(true);
+        record(START_OBJECT, line, offset);
+    }
+
+    @Override
+    public void endObject(int line, long offset) {
+        pop();
+        record(END_OBJECT, line, offset);
+    }
+
+    @Override
+    public void startArray(int line, long offset) {
+        push(false);
+        record(START_ARRAY, line, offset);
+    }
+
+    @Override
+    public void endArray(int line, long offset) {
+        pop();
+        record(END_ARRAY, line, offset);
+    }
+
+    @Override
+    public void visitComment(String comment, int line, long offset) {
+        objects[claim()] = comment;
+        commit(COMMENT, line, offset);
+    }
+
+    @Override
+    public void visitSpace(String space, int line, long offset) {
+        objects[claim()] = space;
+        commit(SPACE, line, offset);
+    }
+
+    @Override
+    public void visitColon(int line, long offset) {
+        discardUnvisited(false);
+        record(COLON, line, offset);
+    }
+
+    @Override
+    public void visitComma(int line, long offset) {
+        discardUnvisited(depth > 0 && inObject[depth - 1]);
+        record(COMMA, line, offset);
+    }
+
+    @Override
+    public void endOfStream(int line, long offset) {
+        record(END_OF_STREAM, line, offset);
+    }
+
+    @Override
+    public void unexpectedByte(byte ch, int line, long offset) {
+        values[claim()] = ch;
+        commit(UNEXPECTED_BYTE, line, offset);
+        // The consumer throws the error:
+        throw STOP;
+    }
+
+    @Override
+    public void exponentOverflow(int line, long offset) {
+        record(EXPONENT_OVERFLOW, line, offset);
+        throw STOP;
+    }
+
+    @Override
+    public void limitExceeded(String message, int line, long offset) {
+        objects[claim()] = message;
+        commit(LIMIT_EXCEEDED, line, offset);
+        throw STOP;
+    }
+}
@@ -2,11 +2,58 @@ package com.brimworks.json5;
 
 import java.math.BigInteger;
 import java.math.BigDecimal;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Called by JSON5Ragel when tokens are found within the source.
  */
 public interface JSON5Visitor {
+    /**
+     * Classes of events a visitor may consume, see {@link #getInterests()}.
+     */
+    enum Interest {
+        /**
+         * {@link #visitSpace(String,int,long)},
+         * {@link #visitComment(String,int,long)}, {@link #visitColon(int,long)} and
+         * {@link #visitComma(int,long)}.
+         */
+        TRIVIA,
+        /**
+         * The {@code visitNumber()} methods.
+         */
+        NUMBERS,
+        /**
+         * The {@code visit()} methods for string values.
+         */
+        STRINGS,
+        /**
+         * The {@code visitKey()} methods.
+         */
+        KEYS,
+        /**
+         * {@link #visitIndex(int,int,long)},
+         * {@link #endArrayValue(int,long)} and
+         * {@link #endObjectPair(String,int,long)}.
+         */
+        LOCATIONS
+    }
+
+    /**
+     * Declare which classes of events this visitor consumes. The parser skips
+     * decoding (and calling the visitor) for everything else, for example
+     * whitespace is not copied into a {@code String} unless
+     * {@link Interest#TRIVIA} is included. Events which are not part of any
+     * {@link Interest} (nulls, booleans, starting and ending objects and arrays,
+     * end of document and stream) are always visited. Called by the parser
+     * whenever the visitor is set. Defaults to all events.
+     * 
+     * @return the classes of events to visit.
+     */
+    default Set<Interest> getInterests() {
+        return EnumSet.allOf(Interest.class);
+    }
+
     /**
      * Indicates a null value was found.
      * 
@@ -36,6 +83,19 @@ public interface JSON5Visitor {
     default void visit(String val, int line, long offset) {
     }
 
+    /**
+     * Indicates a string value was found. Override this instead of
+     * {@link #visit(String,int,long)} to avoid allocating a {@code String} for
+     * every value. Defaults to calling {@link #visit(String,int,long)}.
+     * 
+     * @param val    value found, only valid for the duration of this call.
+     * @param line   source-input line of token
+     * @param offset source-input byte offset from beginning of stream
+     */
+    default void visit(JSON5StringView val, int line, long offset) {
+        visit(val.toString(), line, offset);
+    }
+
     /**
      * Narrowing interface, not actually called directly by the parser, but provides
      * convenience if you do not want to override the individual
@@ -48,6 +108,32 @@ public interface JSON5Visitor {
     default void visit(Number val, int line, long offset) {
     }
 
+    /**
+     * Indicates a number was found. Override this instead of the other
+     * {@code visitNumber()} methods to defer converting the number until (and
+     * unless) the value is needed. Defaults to calling the {@code visitNumber()}
+     * method for the {@link JSON5NumberView.Kind} of number.
+     * 
+     * @param val    value found, only valid for the duration of this call.
+     * @param line   source-input line of token
+     * @param offset source-input byte offset from beginning of stream
+     */
+    default void visitNumber(JSON5NumberView val, int line, long offset) {
+        switch (val.getKind()) {
+        case LONG:
+            visitNumber(val.longValue(), line, offset);
+            break;
+        case BIG_INTEGER:
+            visitNumber(val.bigIntegerValue(), line, offset);
+            break;
+        case BIG_DECIMAL:
+            visitNumber(val.bigDecimalValue(), line, offset);
+            break;
+        default:
+            visitNumber(val.doubleValue(), line, offset);
+        }
+    }
+
     /**
      * Found an integer value (no decimal, no exponent) which does not fit within a
      * long. Defaults to calling {@link #visit(Number,int,long)}
@@ -61,8 +147,10 @@ public interface JSON5Visitor {
     }
 
     /**
-     * Found a floating point value (decimal or exponent was specified) which could
-     * not fit in a double without potentially loosing precision. Defaults to
+     * Found a floating point value (decimal or exponent was specified) which is
+     * outside the range of a double (or could not fit in a double without
+     * loosing precision if
+     * {@link JSON5Parser#setLosslessDecimals(boolean)} is enabled). Defaults to
      * calling {@link #visit(Number,int,long)}
      * 
      * @param val    value found.
@@ -86,8 +174,10 @@ public interface JSON5Visitor {
     }
 
     /**
-     * Found a floating point value (decimal or exponent was specified) which is non
-     * fractional and is in the range 2^53 -1 to -2^53 - 1. Defaults to calling
+     * Found a floating point value (decimal or exponent was specified), rounded to
+     * the nearest double. If {@link JSON5Parser#setLosslessDecimals(boolean)} is
+     * enabled, only values which are non fractional and in the range 2^53 -1 to
+     * -2^53 - 1 are passed as a double. Defaults to calling
      * {@link #visit(Number,int,long)}
      * 
      * @param val    value found.
@@ -118,6 +208,20 @@ public interface JSON5Visitor {
     default void visitKey(String key, int line, long offset) {
     }
 
+    /**
+     * Called when an object "key" has been observed, see
+     * {@link #visitKey(String,int,long)}. Defaults to calling
+     * {@link #visitKey(String,int,long)}.
+     * 
+     * @param key    the key of the object, only valid for the duration of this
+     *               call.
+     * @param line   source-input line of token
+     * @param offset source-input byte offset from beginning of stream
+     */
+    default void visitKey(JSON5StringView key, int line, long offset) {
+        visitKey(key.toString(), line, offset);
+    }
+
     /**
      * Called when an object "key": VALUE has been observed, current location will indicate
      * the location of VALUE.
@@ -215,6 +319,16 @@ public interface JSON5Visitor {
     default void visitComma(int line, long offset) {
     }
 
+    /**
+     * Indicates the root value of a document has ended, only called when parsing
+     * multiple documents, see {@link JSON5Parser#setMultiDocument(boolean)}.
+     * 
+     * @param line   source-input line of token
+     * @param offset source-input byte offset from beginning of stream
+     */
+    default void endDocument(int line, long offset) {
+    }
+
     /**
      * Indicates the end of stream has been reached.
      * 
@@ -0,0 +1,176 @@
+package com.brimworks.json5.ragel;
+
+import java.math.BigInteger;
+
+/**
+ * Converts a decimal significand and exponent into the exactly rounded
+ * (round-half-even) double, without allocating. Small values use Clinger's fast
+ * path, everything else the Eisel-Lemire algorithm as described in "Number
+ * Parsing at a Gigabyte per Second" by Daniel Lemire, which is exact for any
+ * significand which fits in 64 bits. Longer significands are converted from
+ * their leading digits when the remaining digits can't change the result.
+ */
+final class DecimalDouble {
+    private static final int SMALLEST_POWER_OF_TEN = -342;
+    private static final int LARGEST_POWER_OF_TEN = 308;
+    private static final int MANTISSA_EXPLICIT_BITS = 52;
+    private static final int MINIMUM_EXPONENT = -1023;
+    private static final int INFINITE_POWER = 0x7FF;
+    private static final int MIN_EXPONENT_ROUND_TO_EVEN = -4;
+    private static final int MAX_EXPONENT_ROUND_TO_EVEN = 23;
+    private static final long PRECISION_MASK = 0xFFFFFFFFFFFFFFFFL >>> (MANTISSA_EXPLICIT_BITS + 3);
+
+    private static final double[] EXACT_POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    /**
+     * 128 bit approximations of 5^q for q in [-342, 308], stored as high then low
+     * 64 bits, normalized so the most significant bit is set.
+     */
+    private static final long[] POWERS_OF_FIVE = powersOfFive();
+
+    private DecimalDouble() {
+    }
+
+    /**
+     * Compute the double nearest to {@code significand * 10^exponent}.
+     *
+     * @param significand a non-negative decimal significand.
+     * @param exponent    the decimal exponent.
+     * @return the exactly rounded value, which is 0 on underflow and infinity on
+     *         overflow.
+     */
+    static double toDouble(long significand, long exponent) {
+        if (0 == significand || exponent < SMALLEST_POWER_OF_TEN)
+            return 0.0;
+        if (exponent > LARGEST_POWER_OF_TEN)
+            return Double.POSITIVE_INFINITY;
+        int q = (int) exponent;
+        // Clinger: both the significand and power of ten are exact doubles, so a
+        // single correctly rounded operation gives the exact result.
+        if (significand <= 1L << 53 && q >= -22 && q <= 22) {
+            return q < 0 ? significand / EXACT_POWERS_OF_TEN[-q] : significand * EXACT_POWERS_OF_TEN[q];
+        }
+        return eiselLemire(significand, q);
+    }
+
+    /**
+     * Compute the double nearest to a decimal whose significand had more digits
+     * than fit in a long, from its leading digits. The exact value lies between
+     * {@code w * 10^exponent} and {@code (w + 1) * 10^exponent}, so as in
+     * fast_float both are converted, and when they round to the same double so
+     * does every value in between.
+     *
+     * @param w         the leading digits of the significand, which must not be
+     *                  less than 2^53.
+     * @param exponent  the decimal exponent of the last digit of w.
+     * @param truncated true if any of the digits dropped from w were non-zero.
+     * @return the exactly rounded value, or NaN if it depends on the dropped
+     *         digits.
+     */
+    static double toDouble(long w, long exponent, boolean truncated) {
+        double result = truncatedToDouble(w, exponent);
+        // w + 1 may be 2^63, which is fine as w is treated as unsigned:
+        if (truncated && result != truncatedToDouble(w + 1, exponent))
+            return Double.NaN;
+        return result;
+    }
+
+    // Clinger's fast path never applies to a significand this large:
+    private static double truncatedToDouble(long w, long exponent) {
+        if (exponent < SMALLEST_POWER_OF_TEN)
+            return 0.0;
+        if (exponent > LARGEST_POWER_OF_TEN)
+            return Double.POSITIVE_INFINITY;
+        return eiselLemire(w, (int) exponent);
+    }
+
+    private static double eiselLemire(long w, int q) {
+        int lz = Long.numberOfLeadingZeros(w);
+        w <<= lz;
+
+        // Multiply by the 128 bit approximation of 5^q:
+        int index = 2 * (q - SMALLEST_POWER_OF_TEN);
+        long high = unsignedMultiplyHigh(w, POWERS_OF_FIVE[index]);
+        long low = w * POWERS_OF_FIVE[index];
+        if ((high & PRECISION_MASK) == PRECISION_MASK) {
+            // Not enough bits, so use the lower half of the power too:
+            long secondHigh = unsignedMultiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+            low += secondHigh;
+            if (Long.compareUnsigned(secondHigh, low) > 0)
+                high++;
+        }
+
+        int upperbit = (int) (high >>> 63);
+        int shift = upperbit + 64 - MANTISSA_EXPLICIT_BITS - 3;
+        long mantissa = high >>> shift;
+        int power2 = power(q) + upperbit - lz - MINIMUM_EXPONENT;
+        if (power2 <= 0) {
+            // Subnormal:
+            if (-power2 + 1 >= 64)
+                return 0.0;
+            mantissa >>>= -power2 + 1;
+            mantissa += mantissa & 1;
+            mantissa >>>= 1;
+            power2 = mantissa < 1L << MANTISSA_EXPLICIT_BITS ? 0 : 1;
+            return Double.longBitsToDouble(mantissa | (long) power2 << MANTISSA_EXPLICIT_BITS);
+        }
+        // Exactly half way between two doubles, round to even:
+        if ((0 == low || 1 == low) && q >= MIN_EXPONENT_ROUND_TO_EVEN && q <= MAX_EXPONENT_ROUND_TO_EVEN
+                && 1 == (mantissa & 3) && mantissa << shift == high) {
+            mantissa &= ~1L;
+        }
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if (mantissa >= 2L << MANTISSA_EXPLICIT_BITS) {
+            mantissa = 1L << MANTISSA_EXPLICIT_BITS;
+            power2++;
+        }
+        mantissa &= ~(1L << MANTISSA_EXPLICIT_BITS);
+        if (power2 >= INFINITE_POWER)
+            return Double.POSITIVE_INFINITY;
+        return Double.longBitsToDouble(mantissa | (long) power2 << MANTISSA_EXPLICIT_BITS);
+    }
+
+    // floor(log2(10^q)) + 63
+    private static int power(int q) {
+        return (((152170 + 65536) * q) >> 16) + 63;
+    }
+
+    // Equivalent to Math.unsignedMultiplyHigh() which is not available in Java 8.
+    private static long unsignedMultiplyHigh(long x, long y) {
+        long x0 = x & 0xFFFFFFFFL;
+        long x1 = x >>> 32;
+        long y0 = y & 0xFFFFFFFFL;
+        long y1 = y >>> 32;
+        long p01 = x0 * y1;
+        long middle = x1 * y0 + ((x0 * y0) >>> 32) + (p01 & 0xFFFFFFFFL);
+        return x1 * y1 + (middle >>> 32) + (p01 >>> 32);
+    }
+
+    private static long[] powersOfFive() {
+        long[] table = new long[2 * (LARGEST_POWER_OF_TEN - SMALLEST_POWER_OF_TEN + 1)];
+        BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+        for (int q = SMALLEST_POWER_OF_TEN; q <= LARGEST_POWER_OF_TEN; q++) {
+            BigInteger value;
+            if (q < 0) {
+                // Reciprocal, rounded up:
+                BigInteger power5 = BigInteger.valueOf(5).pow(-q);
+                int z = power5.bitLength();
+                int b = q >= -27 ? z + 127 : 2 * z + 128;
+                value = BigInteger.ONE.shiftLeft(b).divide(power5).add(BigInteger.ONE);
+            } else {
+                value = BigInteger.valueOf(5).pow(q);
+            }
+            // Normalize to exactly 128 bits, truncating:
+            int bits = value.bitLength();
+            value = bits > 128 ? value.shiftRight(bits - 128) : value.shiftLeft(128 - bits);
+            if (value.compareTo(two128) >= 0)
+                throw new AssertionError("Unexpected power of five overflow");
+            int index = 2 * (q - SMALLEST_POWER_OF_TEN);
+            table[index] = value.shiftRight(64).longValue();
+            table[index + 1] = value.longValue();
+        }
+        return table;
+    }
+}
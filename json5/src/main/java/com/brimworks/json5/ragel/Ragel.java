@@ -4,6 +4,8 @@ import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executor;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CoderResult;
 import java.nio.charset.CodingErrorAction;
@@ -54,6 +56,15 @@ abstract public class Ragel {
     protected ByteBuffer data;
     protected int cs, p, pe, ts, te, act, eof;
 
+    /**
+     * The backing array of data if it is a heap buffer, otherwise null. Indexing
+     * the array directly is cheaper than {@link ByteBuffer#get(int)}, so the
+     * generated code should use it when it is available. Position p of data is at
+     * index {@code arrayOffset + p} of the array.
+     */
+    protected byte[] array;
+    protected int arrayOffset;
+
     /**
      * Generic mark, typically used for marking the start of a subtoken.
      */
@@ -65,7 +76,8 @@ abstract public class Ragel {
     protected long offset;
 
     /**
-     * Subclasses should increment this when a newline is found.
+     * Subclasses should increment this when a newline is found, see
+     * {@link #newLine()}.
      */
     protected int line;
 
@@ -75,10 +87,48 @@ abstract public class Ragel {
     protected CharBuffer stringBuffer;
 
     /**
-     * Used for accumulating the significand value of a number.
+     * Range within data of UTF-8 input which has been appended to the string
+     * buffer, but not yet decoded. Decoding is deferred so that strings which are
+     * a single contiguous range of input can be viewed without copying.
+     */
+    private int rawBegin = -1;
+    private int rawEnd = -1;
+
+    /**
+     * Reused by {@link #lex(ReadableByteChannel)}.
+     */
+    private ByteBuffer channelBuffer;
+
+    /**
+     * Reused by {@link #lex(ReadableByteChannel, Executor)}, null while a read may
+     * still be filling them.
+     */
+    private ByteBuffer[] readAheadBuffers;
+    private static final int READ_AHEAD_CAPACITY = 64 * 1024;
+    // Room before the data read into a buffer, for the partial token left over
+    // from the previous buffer:
+    private static final int READ_AHEAD_HEADROOM = 4 * 1024;
+
+    /**
+     * Types of number returned by {@link #getNumberType()}.
+     */
+    protected static final int NUMBER_LONG = 0;
+    protected static final int NUMBER_DOUBLE = 1;
+    protected static final int NUMBER_BIG_INTEGER = 2;
+    protected static final int NUMBER_BIG_DECIMAL = 3;
+    protected static final int NUMBER_SPECIAL = 4;
+
+    /**
+     * Used for accumulating the significand value of a number. Once the
+     * significand no longer fits in a long, the remaining digits are only counted
+     * and the exact value is obtained from the text of the token if needed.
      */
     private long numberValue = 0;
-    private BigInteger numberValueBig = null;
+    private boolean numberOverflow = false;
+    // Digits dropped from numberValue once it overflowed, and whether any of them
+    // were non-zero:
+    private int numberTruncated = 0;
+    private boolean numberInexact = false;
     private double numberValueSpecial;
 
     /**
@@ -93,6 +143,36 @@ abstract public class Ragel {
     private int numberExponent = 0;
     private int numberExponentSign = 1;
 
+    /**
+     * When set, decimals are only converted to a double if that can be done
+     * without any rounding.
+     */
+    private boolean losslessDecimals;
+
+    /**
+     * When set, string (or number) tokens are not accumulated.
+     */
+    private boolean discardingStrings;
+    private boolean discardingNumbers;
+
+    /**
+     * Limits passed to {@link #limitExceeded(int, long)} when exceeded, see
+     * {@link #setLimits(int, int, int, long)}.
+     */
+    protected static final int LIMIT_TOKEN_BYTES = 0;
+    protected static final int LIMIT_STRING_CHARS = 1;
+    protected static final int LIMIT_NUMBER_DIGITS = 2;
+    protected static final int LIMIT_DOCUMENT_BYTES = 3;
+    private int maxTokenBytes = Integer.MAX_VALUE;
+    private int maxStringChars = Integer.MAX_VALUE;
+    private int maxNumberDigits = Integer.MAX_VALUE;
+    private long maxDocumentBytes = Long.MAX_VALUE;
+    // Length of the current string while discarding it, and of the current number:
+    private int stringChars;
+    private int numberDigits;
+
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
     private CharsetDecoder utf8Decoder = UTF_8.newDecoder().onUnmappableCharacter(CodingErrorAction.REPLACE)
             .onMalformedInput(CodingErrorAction.REPLACE);
 
@@ -107,16 +187,19 @@ abstract public class Ragel {
      * @param isFractional set to true when appending a fractional part.
      */
     protected void appendNumber(int number, int base, boolean isFractional) {
-        if (null != numberValueBig) {
-            numberValueBig = numberValueBig.multiply(BigInteger.valueOf(base)).add(BigInteger.valueOf(number));
+        if (++numberDigits > maxNumberDigits)
+            limitExceeded(LIMIT_NUMBER_DIGITS, maxNumberDigits);
+        if (discardingNumbers) {
+            return;
+        } else if (numberOverflow || numberValue > (Long.MAX_VALUE - number) / base) {
+            // Too big for a long, the leading digits are kept for getNumberDouble()
+            // and the exact value is parsed from the token text on demand.
+            numberOverflow = true;
+            numberTruncated++;
+            if (0 != number)
+                numberInexact = true;
         } else {
-            long newValue = numberValue * base + number;
-            if (newValue < 0) {
-                numberValueBig = BigInteger.valueOf(numberValue);
-                appendNumber(number, base, isFractional);
-                return;
-            }
-            numberValue = newValue;
+            numberValue = numberValue * base + number;
         }
         if (isFractional)
             numberScale--;
@@ -160,102 +243,334 @@ abstract public class Ragel {
     }
 
     /**
-     * Calls the appropriate {@code visitNumber()} method with the number in the
-     * number buffer and reset the internal number buffer.
+     * By default decimals (numbers with a fraction or exponent) are converted to
+     * the nearest double, and only decimals outside the range of a double are
+     * passed as a {@code BigDecimal}. When lossless decimals are enabled, a double
+     * is only used for decimals which are integers exactly representable as a
+     * double, so no precision is ever lost.
+     * 
+     * @param losslessDecimals true to enable lossless decimals.
+     */
+    public void setLosslessDecimals(boolean losslessDecimals) {
+        this.losslessDecimals = losslessDecimals;
+    }
+
+    /**
+     * @return true if lossless decimals are enabled.
+     */
+    public boolean isLosslessDecimals() {
+        return losslessDecimals;
+    }
+
+    /**
+     * Stop (or resume) accumulating string and number tokens, which makes lexing
+     * input which will be discarded anyway cheaper. While discarding, strings are
+     * empty and numbers are zero, but the input is still fully validated.
+     * 
+     * @param discarding true to stop accumulating tokens.
+     */
+    public void setDiscarding(boolean discarding) {
+        this.discardingStrings = discarding;
+        this.discardingNumbers = discarding;
+    }
+
+    /**
+     * @return true if string and number tokens are not being accumulated.
+     */
+    public boolean isDiscarding() {
+        return discardingStrings && discardingNumbers;
+    }
+
+    /**
+     * Stop (or resume) accumulating string tokens only, see
+     * {@link #setDiscarding(boolean)}.
+     * 
+     * @param discardingStrings true to stop accumulating strings.
+     */
+    public void setDiscardingStrings(boolean discardingStrings) {
+        this.discardingStrings = discardingStrings;
+    }
+
+    /**
+     * Stop (or resume) accumulating number tokens only, see
+     * {@link #setDiscarding(boolean)}.
+     * 
+     * @param discardingNumbers true to stop accumulating numbers.
+     */
+    public void setDiscardingNumbers(boolean discardingNumbers) {
+        this.discardingNumbers = discardingNumbers;
+    }
+
+    /**
+     * Bound the input, so hostile input fails fast rather than exhausting memory.
+     * When a limit is exceeded {@link #limitExceeded(int, long)} is called.
+     * 
+     * @param maxTokenBytes    maximum bytes of a token which spans the end of the
+     *                         input passed to {@link #lex(ByteBuffer, boolean)},
+     *                         so must be buffered.
+     * @param maxStringChars   maximum length of a string in chars.
+     * @param maxNumberDigits  maximum number of digits of a number.
+     * @param maxDocumentBytes maximum bytes of input since {@link #reset()}.
+     */
+    public void setLimits(int maxTokenBytes, int maxStringChars, int maxNumberDigits, long maxDocumentBytes) {
+        this.maxTokenBytes = maxTokenBytes;
+        this.maxStringChars = maxStringChars;
+        this.maxNumberDigits = maxNumberDigits;
+        this.maxDocumentBytes = maxDocumentBytes;
+    }
+
+    /**
+     * Subclasses should call this when a newline is found, with {@link #p} at
+     * the first byte of the new line. Increments the line number.
+     */
+    protected void newLine() {
+        line++;
+    }
+
+    /**
+     * Calls {@link #visitNumber()} and resets the internal number buffer.
      */
     protected void resetNumber() {
-        getNumber();
+        visitNumber();
+        clearNumber();
+    }
+
+    /**
+     * Reset the internal number buffer.
+     */
+    protected void clearNumber() {
         numberValue = 0;
-        numberValueBig = null;
+        numberOverflow = false;
+        numberTruncated = 0;
+        numberInexact = false;
         numberValueSpecial = 0;
         numberSign = 1;
         numberScale = 0;
         numberExponent = 0;
         numberExponentSign = 1;
+        numberDigits = 0;
+    }
+
+    /**
+     * Called by {@link #resetNumber()} when a number is complete, by default calls
+     * the appropriate {@code visitNumber()} method for the type of number.
+     * Subclasses may override this to defer the conversion by using
+     * {@link #getNumberType()} and the {@code getNumber*()} methods, which are
+     * valid until the number is cleared.
+     */
+    protected void visitNumber() {
+        switch (getNumberType()) {
+        case NUMBER_LONG:
+            visitNumber(getNumberLong());
+            break;
+        case NUMBER_BIG_INTEGER:
+            visitNumber(getNumberBigInteger());
+            break;
+        case NUMBER_BIG_DECIMAL:
+            visitNumber(getNumberBigDecimal());
+            break;
+        default:
+            visitNumber(getNumberDouble());
+        }
     }
 
     /**
-     * Called by {@link #resetNumber()} if the number found is an integer to large
+     * Called by {@link #visitNumber()} if the number found is an integer to large
      * to fit in a long.
      * 
      * @param bigInt the number
      */
-    abstract protected void visitNumber(BigInteger bigInt);
+    protected void visitNumber(BigInteger bigInt) {
+    }
 
     /**
-     * Called by {@link #resetNumber()} if the number found is a floating point
-     * number to large to fit in a double.
+     * Called by {@link #visitNumber()} if the number found is a floating point
+     * number which can not be represented by a double.
      * 
      * @param bigDec the number
      */
-    abstract protected void visitNumber(BigDecimal bigDec);
+    protected void visitNumber(BigDecimal bigDec) {
+    }
 
     /**
-     * Called by {@link #resetNumber()} if the number found is an integer.
+     * Called by {@link #visitNumber()} if the number found is an integer.
      * 
      * @param smallInt the number
      */
-    abstract protected void visitNumber(long smallInt);
+    protected void visitNumber(long smallInt) {
+    }
 
     /**
-     * Called by {@link #resetNumber()} if the number found is a floting point
+     * Called by {@link #visitNumber()} if the number found is a floting point
      * number.
      * 
      * @param smallDec the number
      */
-    abstract protected void visitNumber(double smallDec);
+    protected void visitNumber(double smallDec) {
+    }
 
-    private void getNumber() {
-        if (0 != numberValueSpecial) {
-            visitNumber(numberSign*numberValueSpecial);
-            return;
-        }
-        if (null != numberValueBig) {
-            int scale = numberScale + numberExponentSign * numberExponent;
-            // Handle big numbers.
-            BigInteger result = numberSign < 0 ? numberValueBig.negate() : numberValueBig;
-            if (scale != 0) {
-                visitNumber(new BigDecimal(result, -1 * scale));
-            } else {
-                visitNumber(result);
-            }
-            return;
-        } else if (0 == numberScale && 0 == numberExponent ) {
-            // Simple long:
-            visitNumber(numberValue * numberSign);
-            return;
+    /**
+     * Classify the number found without converting it, this only involves
+     * arithmetic on the accumulated significand and scale.
+     * 
+     * @return one of the {@code NUMBER_*} constants.
+     */
+    protected int getNumberType() {
+        if (0 != numberValueSpecial)
+            return NUMBER_SPECIAL;
+        if (numberOverflow) {
+            int scale = getNumberScale();
+            if (0 == scale)
+                return NUMBER_BIG_INTEGER;
+            return losslessDecimals || !isDoubleInRange(scale + numberTruncated) ? NUMBER_BIG_DECIMAL
+                    : NUMBER_DOUBLE;
         }
-        int scale = numberScale + numberExponentSign * numberExponent;
+        if (0 == numberScale && 0 == numberExponent)
+            return NUMBER_LONG;
+        int scale = getNumberScale();
+        if (!losslessDecimals)
+            return isDoubleInRange(scale) ? NUMBER_DOUBLE : NUMBER_BIG_DECIMAL;
         if (scale > 0) {
             if (scale > 15) {
                 // Won't accurately fit in a double!
-                visitNumber(new BigDecimal(BigInteger.valueOf(numberSign * numberValue), -1 * scale));
-                return;
+                return NUMBER_BIG_DECIMAL;
             }
             long num = numberValue;
             for (int i = scale; i > 0; i--) {
                 num *= 10;
                 if (num >= 9007199254740992L) { // 2^53
                     // Won't accurately fit in a double!
-                    visitNumber(new BigDecimal(BigInteger.valueOf(numberSign * numberValue), -1 * scale));
-                    return;
+                    return NUMBER_BIG_DECIMAL;
                 }
             }
-            visitNumber((double) numberSign*num);
         } else if (numberValue < 9007199254740992L) {
             long num = numberValue;
             for (int i= scale; i < 0; i++) {
                 if (num % 10 != 0) {
                     // Won't accurately fit in a double!
-                    visitNumber(new BigDecimal(BigInteger.valueOf(numberSign * numberValue), -1 * scale));
-                    return;
+                    return NUMBER_BIG_DECIMAL;
                 }
                 num /= 10;
             }
-            visitNumber((double) numberSign*num);
         } else {
-            visitNumber(new BigDecimal(BigInteger.valueOf(numberSign * numberValue), -1 * scale));
+            return NUMBER_BIG_DECIMAL;
+        }
+        return NUMBER_DOUBLE;
+    }
+
+    /**
+     * @return the number found, only valid if the type is {@link #NUMBER_LONG}.
+     */
+    protected long getNumberLong() {
+        return numberSign * numberValue;
+    }
+
+    /**
+     * @return the number found, rounded to the nearest double.
+     */
+    protected double getNumberDouble() {
+        if (0 != numberValueSpecial)
+            return numberSign * numberValueSpecial;
+        if (numberOverflow)
+            return getTruncatedNumberDouble();
+        return numberSign * DecimalDouble.toDouble(numberValue, getNumberScale());
+    }
+
+    /**
+     * Convert a decimal with more significant digits than fit in a long from its
+     * leading digits, only parsing the token text when the dropped digits affect
+     * the rounding.
+     */
+    private double getTruncatedNumberDouble() {
+        if (!isHexNumber()) {
+            double result = DecimalDouble.toDouble(numberValue, getNumberScale() + numberTruncated,
+                    numberInexact);
+            if (!Double.isNaN(result))
+                return numberSign * result;
+        }
+        return getNumberBigDecimal().doubleValue();
+    }
+
+    /**
+     * @return the number found, with any fractional part discarded.
+     * @throws NumberFormatException if the number is NaN or Infinity.
+     */
+    protected BigInteger getNumberBigInteger() {
+        if (0 == numberValueSpecial && !numberOverflow && 0 == getNumberScale())
+            return BigInteger.valueOf(numberSign * numberValue);
+        if (isHexNumber())
+            return parseHexNumber();
+        return getNumberBigDecimal().toBigInteger();
+    }
+
+    /**
+     * @return the number found.
+     * @throws NumberFormatException if the number is NaN or Infinity.
+     */
+    protected BigDecimal getNumberBigDecimal() {
+        if (0 != numberValueSpecial)
+            throw new NumberFormatException("Not a finite number: " + getNumberText());
+        if (!numberOverflow)
+            return BigDecimal.valueOf(numberSign * numberValue, -1 * getNumberScale());
+        if (isHexNumber())
+            return new BigDecimal(parseHexNumber());
+        return new BigDecimal(getNumberText());
+    }
+
+    /**
+     * The text of the number token, which must be between {@code ts} and
+     * {@code te} (as is the case within a scanner action).
+     * 
+     * @return the number as found in the input.
+     */
+    protected String getNumberText() {
+        char[] chars = new char[te - ts];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (data.get(ts + i) & 0xff);
+        }
+        return new String(chars);
+    }
+
+    private int getNumberScale() {
+        return numberScale + numberExponentSign * numberExponent;
+    }
+
+    /**
+     * Check that the decimal neither overflows to infinity or underflows to zero,
+     * only converting the number if it is close to those limits.
+     */
+    private boolean isDoubleInRange(int scale) {
+        if (0 == numberValue)
+            return true;
+        int digits = 1;
+        for (long pow = 10; digits < 19 && numberValue >= pow; pow *= 10) {
+            digits++;
         }
+        // Value is in the range [10^(magnitude-1), 10^magnitude):
+        int magnitude = digits + scale;
+        if (magnitude <= 308 && magnitude >= -322)
+            return true;
+        if (magnitude >= 310 || magnitude <= -324)
+            return false;
+        double result = DecimalDouble.toDouble(numberValue, scale);
+        return !Double.isInfinite(result) && 0 != result;
+    }
+
+    private boolean isHexNumber() {
+        int i = ts;
+        byte ch = data.get(i);
+        if ('-' == ch || '+' == ch)
+            i++;
+        return te - i > 2 && '0' == data.get(i) && 'x' == (data.get(i + 1) | 0x20);
+    }
+
+    private BigInteger parseHexNumber() {
+        String text = getNumberText();
+        int digits = text.indexOf('x');
+        if (digits < 0)
+            digits = text.indexOf('X');
+        BigInteger result = new BigInteger(text.substring(digits + 1), 16);
+        return numberSign < 0 ? result.negate() : result;
     }
 
     /**
@@ -306,34 +621,183 @@ abstract public class Ragel {
      * @param end   end offset within data exclusive.
      */
     protected void appendStringBufferUTF8(int begin, int end) {
-        if (null == stringBuffer)
-            stringBuffer = CharBuffer.allocate(8 * 1024);
-        ByteBuffer slice = data.slice();
-        slice.position(begin);
-        slice.limit(end);
-        while (CoderResult.OVERFLOW == utf8Decoder.decode(slice, stringBuffer, true)) {
-            CharBuffer fresh = CharBuffer.allocate(stringBuffer.capacity() * 2);
+        if (begin >= end)
+            return;
+        if (discardingStrings) {
+            // Nothing is retained, so the chars are counted (only when limited):
+            if (Integer.MAX_VALUE != maxStringChars)
+                countDiscardedChars(utf16Length(data, begin, end));
+            return;
+        }
+        if (rawBegin >= 0) {
+            if (begin == rawEnd) {
+                // Contiguous, simply extend the raw range:
+                rawEnd = end;
+                checkStringChars();
+                return;
+            }
+            flushStringBuffer();
+        }
+        rawBegin = begin;
+        rawEnd = end;
+        checkStringChars();
+    }
+
+    /**
+     * Decode any UTF-8 input which was appended to the string buffer, but not yet
+     * decoded. This is called automatically as needed, but subclasses must call
+     * this before reading {@link #stringBuffer} directly.
+     */
+    protected void flushStringBuffer() {
+        if (rawBegin < 0)
+            return;
+        // The ASCII prefix (usually all of it) is copied without the decoder:
+        int ascii = skipAscii(data, rawBegin, rawEnd);
+        ensureStringBuffer(ascii - rawBegin);
+        char[] chars = stringBuffer.array();
+        int pos = stringBuffer.position();
+        if (null != array) {
+            for (int i = rawBegin; i < ascii; i++) {
+                chars[pos++] = (char) array[arrayOffset + i];
+            }
+        } else {
+            for (int i = rawBegin; i < ascii; i++) {
+                chars[pos++] = (char) data.get(i);
+            }
+        }
+        stringBuffer.position(pos);
+        if (ascii < rawEnd) {
+            // Offsets are absolute, so avoid slice() which is relative to position:
+            ByteBuffer slice = data.duplicate();
+            slice.limit(rawEnd);
+            slice.position(ascii);
+            while (CoderResult.OVERFLOW == utf8Decoder.decode(slice, stringBuffer, true)) {
+                ensureStringBuffer(stringBuffer.capacity());
+            }
+        }
+        rawBegin = rawEnd = -1;
+    }
+
+    /**
+     * Find the end of a run of ASCII in UTF-8 input. The input is examined 8
+     * bytes at a time, so this is much cheaper than decoding.
+     * 
+     * @param data  UTF-8 input.
+     * @param begin start offset within data inclusive.
+     * @param end   end offset within data exclusive.
+     * @return offset of the first byte which is not ASCII, or end if all bytes in
+     *         the range are ASCII.
+     */
+    public static int skipAscii(ByteBuffer data, int begin, int end) {
+        int p = begin;
+        while (p + 8 <= end && 0 == (data.getLong(p) & HIGH_BITS)) {
+            p += 8;
+        }
+        while (p < end && data.get(p) >= 0) {
+            p++;
+        }
+        return p;
+    }
+
+    /**
+     * @return the number of chars the UTF-8 input decodes to.
+     */
+    private static int utf16Length(ByteBuffer data, int begin, int end) {
+        int length = 0;
+        for (int i = begin; i < end; i++) {
+            int ascii = skipAscii(data, i, end);
+            length += ascii - i;
+            if ((i = ascii) == end)
+                break;
+            int ch = data.get(i) & 0xff;
+            // Count leading bytes, and a second char for a surrogate pair:
+            if (0x80 != (ch & 0xC0))
+                length++;
+            if (0xF0 == (ch & 0xF8))
+                length++;
+        }
+        return length;
+    }
+
+    private void countDiscardedChars(int chars) {
+        stringChars += chars;
+        if (stringChars < 0 || stringChars > maxStringChars)
+            limitExceeded(LIMIT_STRING_CHARS, maxStringChars);
+    }
+
+    /**
+     * Check the length of the string buffer, including the raw range.
+     */
+    private void checkStringChars() {
+        int buffered = null == stringBuffer ? 0 : stringBuffer.position();
+        // UTF-8 bytes are an upper bound on chars, so usually nothing is counted:
+        if ((long) buffered + (rawEnd - rawBegin) > maxStringChars) {
+            if ((long) buffered + utf16Length(data, rawBegin, rawEnd) > maxStringChars)
+                limitExceeded(LIMIT_STRING_CHARS, maxStringChars);
+            // Decode (at most the limit) now, so the range is not counted again:
+            flushStringBuffer();
+        }
+    }
+
+    /**
+     * Grow the string buffer (if necessary) so it has room for more chars.
+     */
+    private void ensureStringBuffer(int extra) {
+        if (null == stringBuffer) {
+            stringBuffer = CharBuffer.allocate(Math.max(8 * 1024, extra));
+        } else if (stringBuffer.remaining() < extra) {
+            int capacity = Math.max(stringBuffer.capacity() * 2, stringBuffer.position() + extra);
+            CharBuffer fresh = CharBuffer.allocate(capacity);
             stringBuffer.flip();
             fresh.put(stringBuffer);
             stringBuffer = fresh;
         }
     }
 
+    /**
+     * Check if the string buffer consists only of a single contiguous range of
+     * UTF-8 input, in which case the value can be obtained from
+     * {@link #getRawStringBegin()} and {@link #getRawStringEnd()} without any
+     * decoding.
+     * 
+     * @return true if the string buffer is a single range of raw input.
+     */
+    protected boolean isRawString() {
+        return rawBegin >= 0 && (null == stringBuffer || 0 == stringBuffer.position());
+    }
+
+    /**
+     * @return start offset within data (inclusive) of a raw string, see
+     *         {@link #isRawString()}.
+     */
+    protected int getRawStringBegin() {
+        return rawBegin;
+    }
+
+    /**
+     * @return end offset within data (exclusive) of a raw string, see
+     *         {@link #isRawString()}.
+     */
+    protected int getRawStringEnd() {
+        return rawEnd;
+    }
+
     /**
      * Append a code point to the internal string buffer.
      * 
      * @param codePoint code point to append to the internal string buffer.
      */
     protected void appendStringBufferCodePt(int codePoint) {
-        if (null == stringBuffer)
-            stringBuffer = CharBuffer.allocate(8 * 1024);
         int width = codePoint < 0x10000 ? 1 : 2;
-        // Enough space?
-        if (stringBuffer.position() >= stringBuffer.limit() - width) {
-            CharBuffer fresh = CharBuffer.allocate(stringBuffer.capacity() * 2);
-            fresh.put(stringBuffer);
-            stringBuffer = fresh;
+        if (discardingStrings) {
+            if (Integer.MAX_VALUE != maxStringChars)
+                countDiscardedChars(width);
+            return;
         }
+        flushStringBuffer();
+        if ((null == stringBuffer ? 0L : stringBuffer.position()) + width > maxStringChars)
+            limitExceeded(LIMIT_STRING_CHARS, maxStringChars);
+        ensureStringBuffer(width);
         if (1 == width) {
             stringBuffer.put((char) codePoint);
         } else {
@@ -348,12 +812,42 @@ abstract public class Ragel {
      * @return the current value in the string buffer.
      */
     protected String resetStringBuffer() {
+        flushStringBuffer();
+        if (null == stringBuffer)
+            return "";
         stringBuffer.flip();
         String result = stringBuffer.toString();
         stringBuffer.clear();
+        stringChars = 0;
         return result;
     }
 
+    /**
+     * Decode a range of UTF-8 input into a string, even if strings are being
+     * discarded. The string buffer must be empty.
+     * 
+     * @param begin start offset within data inclusive.
+     * @param end   end offset within data exclusive.
+     * @return the decoded string.
+     */
+    protected String decodeStringUTF8(int begin, int end) {
+        if (begin < end) {
+            rawBegin = begin;
+            rawEnd = end;
+        }
+        return resetStringBuffer();
+    }
+
+    /**
+     * Discard the value in the string buffer.
+     */
+    protected void clearStringBuffer() {
+        rawBegin = rawEnd = -1;
+        stringChars = 0;
+        if (null != stringBuffer)
+            stringBuffer.clear();
+    }
+
     /**
      * Subclasses should implement via {@code write init}
      */
@@ -378,19 +872,33 @@ abstract public class Ragel {
     abstract protected void exponentOverflow(int number);
 
     /**
-     * Reset (or initialize) internal lexical analysis state.
+     * Subclasses should override this to report that a limit set by
+     * {@link #setLimits(int, int, int, long)} was exceeded, by throwing an
+     * exception with the location (lexing can not continue). By default this
+     * throws an {@code IllegalStateException}.
+     * 
+     * @param limit one of the {@code LIMIT_*} constants.
+     * @param max   the value of the limit.
+     */
+    protected void limitExceeded(int limit, long max) {
+        throw new IllegalStateException("Limit " + limit + " of " + max + " exceeded at offset " + (offset + p));
+    }
+
+    /**
+     * Reset (or initialize) internal lexical analysis state. Settings such as
+     * {@link #setDiscarding(boolean)} and the limits are left as they are, so
+     * they may be configured before calling a method which resets.
      */
     public void reset() {
         ragelInit();
+        // Positions may be left over from lexing which was aborted by an exception:
+        p = 0;
+        pe = 0;
         line = 1;
         offset = 0;
         mark = -1;
-        if (null != stringBuffer)
-            stringBuffer.clear();
-        numberValue = 0;
-        numberValueBig = null;
-        numberSign = 1;
-        numberScale = 0;
+        clearStringBuffer();
+        clearNumber();
     }
 
     /**
@@ -407,13 +915,31 @@ abstract public class Ragel {
      */
     public boolean lex(ByteBuffer data, boolean eof) {
         this.data = data;
+        if (data.hasArray()) {
+            array = data.array();
+            arrayOffset = data.arrayOffset();
+        } else {
+            array = null;
+            arrayOffset = 0;
+        }
         // Obtain the bounds:
         pe = data.limit();
         enter(data.position());
-        if (eof)
-            this.eof = pe;
+        // Only lex up to the document limit, which is then reported:
+        boolean tooLong = offset + pe > maxDocumentBytes;
+        if (tooLong)
+            pe = (int) (maxDocumentBytes - offset);
+        // Ensure a stale eof from a previous call never matches:
+        this.eof = eof && !tooLong ? pe : -1;
         ragelExec();
+        if (tooLong)
+            limitExceeded(LIMIT_DOCUMENT_BYTES, maxDocumentBytes);
         int pos = ts >= 0 ? ts : p;
+        if (!eof && pe - pos > maxTokenBytes)
+            limitExceeded(LIMIT_TOKEN_BYTES, maxTokenBytes);
+        // Input before pos may be discarded, so decode it now:
+        if (rawBegin >= 0 && rawBegin < pos)
+            flushStringBuffer();
         boolean progress = pos > data.position();
         // Update the position:
         data.position(pos);
@@ -430,7 +956,10 @@ abstract public class Ragel {
      */
     public void lex(ReadableByteChannel in) throws IOException {
         reset();
-        ByteBuffer buff = ByteBuffer.allocate(8 * 1024);
+        if (null == channelBuffer)
+            channelBuffer = ByteBuffer.allocate(8 * 1024);
+        ByteBuffer buff = channelBuffer;
+        buff.clear();
         boolean eof = false;
         while (!eof) {
             eof = in.read(buff) <= 0;
@@ -438,13 +967,204 @@ abstract public class Ragel {
             if (!lex(buff, eof) && !eof) {
                 ByteBuffer fresh = ByteBuffer.allocate(buff.capacity() * 2);
                 fresh.put(buff);
-                buff = fresh;
+                buff = channelBuffer = fresh;
             } else {
                 buff.compact();
             }
         }
     }
 
+    /**
+     * Perform lexical analysis on the entire {@code ReadableByteChannel} like
+     * {@link #lex(ReadableByteChannel)}, but read ahead on the executor, so the
+     * next chunk of input is read while the current one is lexed. A token which
+     * spans two chunks is completed by copying only its beginning in front of
+     * the next chunk (which is read leaving room for it), so the buffers are
+     * never compacted. An executor which runs tasks on the calling thread is
+     * allowed, but then reading and lexing simply alternate.
+     * 
+     * Before returning (or throwing) this waits for any read in progress to
+     * complete, so the channel may be closed afterwards.
+     * 
+     * @param in        the channel to read from, which is only read by one thread
+     *                  at a time.
+     * @param readAhead runs the reads.
+     * @throws IOException if {@code in} encounters an error reading, or this
+     *                     thread is interrupted while waiting for a read.
+     */
+    public void lex(ReadableByteChannel in, Executor readAhead) throws IOException {
+        reset();
+        ByteBuffer[] buffers = readAheadBuffers;
+        if (null == buffers)
+            buffers = new ByteBuffer[] { ByteBuffer.allocate(READ_AHEAD_CAPACITY),
+                    ByteBuffer.allocate(READ_AHEAD_CAPACITY) };
+        readAheadBuffers = null;
+        ReadAhead reader = new ReadAhead(in);
+        ByteBuffer current = buffers[0];
+        ByteBuffer spare = buffers[1];
+        current.limit(READ_AHEAD_HEADROOM).position(READ_AHEAD_HEADROOM);
+        boolean eof = false;
+        try {
+            while (true) {
+                if (!eof)
+                    reader.start(spare, readAhead);
+                lex(current, eof);
+                if (eof)
+                    break;
+                eof = reader.await();
+                // Copy the unconsumed tail of this chunk in front of the next:
+                int tail = current.remaining();
+                if (tail > READ_AHEAD_HEADROOM) {
+                    // A token longer than the headroom, or even the whole chunk:
+                    ByteBuffer joined = ByteBuffer.allocate(READ_AHEAD_HEADROOM + tail + spare.remaining());
+                    joined.position(READ_AHEAD_HEADROOM);
+                    joined.put(current).put(spare).flip().position(READ_AHEAD_HEADROOM);
+                    spare = joined;
+                } else {
+                    int begin = READ_AHEAD_HEADROOM - tail;
+                    spare.position(begin);
+                    spare.put(current);
+                    spare.position(begin);
+                }
+                ByteBuffer lexed = current;
+                current = spare;
+                spare = lexed;
+            }
+            buffers[0] = current;
+            buffers[1] = spare;
+        } finally {
+            // Never return while the channel or a buffer may still be in use:
+            if (reader.awaitQuietly())
+                readAheadBuffers = buffers;
+        }
+    }
+
+    /**
+     * Reads a whole chunk into a buffer on another thread, see
+     * {@link #lex(ReadableByteChannel, Executor)}.
+     */
+    private static final class ReadAhead implements Runnable {
+        private final ReadableByteChannel in;
+        private ByteBuffer buffer;
+        private boolean done = true;
+        private boolean eof;
+        private Throwable error;
+
+        private ReadAhead(ReadableByteChannel in) {
+            this.in = in;
+        }
+
+        /**
+         * Begin reading into the buffer after its headroom.
+         */
+        void start(ByteBuffer buffer, Executor executor) {
+            buffer.clear().position(READ_AHEAD_HEADROOM);
+            synchronized (this) {
+                this.buffer = buffer;
+                this.done = false;
+                this.eof = false;
+                this.error = null;
+            }
+            try {
+                executor.execute(this);
+            } catch (RuntimeException | Error ex) {
+                synchronized (this) {
+                    done = true;
+                    notifyAll();
+                }
+                throw ex;
+            }
+        }
+
+        @Override
+        public void run() {
+            ByteBuffer buffer;
+            synchronized (this) {
+                buffer = this.buffer;
+            }
+            boolean eof = false;
+            Throwable error = null;
+            try {
+                while (buffer.hasRemaining()) {
+                    if (in.read(buffer) <= 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                buffer.flip().position(READ_AHEAD_HEADROOM);
+            } catch (Throwable ex) {
+                error = ex;
+            }
+            synchronized (this) {
+                this.eof = eof;
+                this.error = error;
+                this.done = true;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Wait for the read to complete.
+         * 
+         * @return true if the end of the channel was reached.
+         */
+        synchronized boolean await() throws IOException {
+            try {
+                while (!done) {
+                    wait();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                InterruptedIOException err = new InterruptedIOException("Interrupted while reading ahead");
+                err.initCause(ex);
+                throw err;
+            }
+            if (error instanceof IOException)
+                throw (IOException) error;
+            if (error instanceof RuntimeException)
+                throw (RuntimeException) error;
+            if (error instanceof Error)
+                throw (Error) error;
+            return eof;
+        }
+
+        /**
+         * Wait for any read to complete, ignoring its result.
+         * 
+         * @return false if interrupted before the read completed.
+         */
+        synchronized boolean awaitQuietly() {
+            try {
+                while (!done) {
+                    wait();
+                }
+                return true;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Release any internal buffers which have grown beyond the specified capacity,
+     * so a single large input does not retain memory for the lifetime of this
+     * lexer.
+     * 
+     * @param maxCapacity maximum capacity (in bytes or chars) of buffers to
+     *                    retain.
+     */
+    public void trimBuffers(int maxCapacity) {
+        // Only discard the string buffer if it is not in use:
+        if (null != stringBuffer && stringBuffer.capacity() > maxCapacity && 0 == stringBuffer.position())
+            stringBuffer = null;
+        if (null != channelBuffer && channelBuffer.capacity() > maxCapacity)
+            channelBuffer = null;
+        if (null != readAheadBuffers && (readAheadBuffers[0].capacity() > maxCapacity
+                || readAheadBuffers[1].capacity() > maxCapacity))
+            readAheadBuffers = null;
+    }
+
     private void enter(int pos) {
         if (ts >= 0)
             ts += pos;
@@ -452,7 +1172,11 @@ abstract public class Ragel {
         if (te >= 0)
             te += pos;
         if (mark >= 0)
-            mark += ts;
+            mark += pos;
+        if (rawBegin >= 0) {
+            rawBegin += pos;
+            rawEnd += pos;
+        }
         offset -= pos;
     }
 
@@ -464,6 +1188,10 @@ abstract public class Ragel {
             te -= pos;
         if (mark >= 0)
             mark -= pos;
+        if (rawBegin >= 0) {
+            rawBegin -= pos;
+            rawEnd -= pos;
+        }
         offset += pos;
     }
 }
\ No newline at end of file
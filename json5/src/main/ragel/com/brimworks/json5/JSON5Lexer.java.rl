@@ -10,6 +10,13 @@ import java.util.List;
  * Implements the lexer using ragel, please see {@link JSON5Parser} which uses this.
  */
 class JSON5Lexer extends Ragel {
+    /**
+     * Indexed by {@link #getNumberType()}.
+     */
+    private static final JSON5NumberView.Kind[] NUMBER_KINDS = { JSON5NumberView.Kind.LONG,
+            JSON5NumberView.Kind.DOUBLE, JSON5NumberView.Kind.BIG_INTEGER, JSON5NumberView.Kind.BIG_DECIMAL,
+            JSON5NumberView.Kind.SPECIAL };
+
     /**
      * A few callbacks are specific to the Lexer -> Parser and are thus not
      * part of the public JSON5Visitor interface.
@@ -17,11 +24,8 @@ class JSON5Lexer extends Ragel {
     interface Visitor {
         void visitNull(int line, long offset);
         void visit(boolean val, int line, long offset);
-        void visit(String val, int line, long offset);
-        void visitNumber(BigDecimal val, int line, long offset);
-        void visitNumber(BigInteger val, int line, long offset);
-        void visitNumber(double val, int line, long offset);
-        void visitNumber(long val, int line, long offset);
+        void visit(JSON5StringView val, int line, long offset);
+        void visitNumber(JSON5NumberView val, int line, long offset);
         void startObject(int line, long offset);
         void endObject(int line, long offset);
         void startArray(int line, long offset);
@@ -33,6 +37,7 @@ class JSON5Lexer extends Ragel {
         void endOfStream(int line, long offset);
         void unexpectedByte(byte ch, int line, long offset);
         void exponentOverflow(int line, long offset);
+        void limitExceeded(String message, int line, long offset);
     }
 
     private Visitor visitor;
@@ -46,6 +51,22 @@ class JSON5Lexer extends Ragel {
      * Keep track of if we are within a fractional part of a number.
      */
     private boolean inFraction;
+    /**
+     * Reused for every string token.
+     */
+    private final JSON5StringView stringView = new JSON5StringView();
+    /**
+     * Reused for every number token.
+     */
+    private final JSON5NumberView numberView = new JSON5NumberView(this);
+    /**
+     * When cleared, space and comment tokens are validated but not visited.
+     */
+    private boolean trivia = true;
+    /**
+     * Records the offset of every line, null if not indexing lines.
+     */
+    private JSON5LineIndex lineIndex;
 
     /**
      * Constructs a lexer which emits tokens of the JSON5 language.
@@ -56,11 +77,92 @@ class JSON5Lexer extends Ragel {
         this.visitor = visitor;
     }
 
+    /**
+     * Switch to a different visitor, such as one which intercepts the tokens on
+     * their way to the parser.
+     *
+     * @param visitor to use when tokens are found.
+     */
+    void setVisitor(Visitor visitor) {
+        this.visitor = visitor;
+    }
+
     private void tokenStart() {
         tsLine = line;
         tsOffset = offset + p;
     }
 
+    /**
+     * Visit the string buffer as a view, avoiding any copies if the string was a
+     * single range of input.
+     */
+    private void visitString() {
+        if (isRawString()) {
+            stringView.set(data, getRawStringBegin(), getRawStringEnd());
+        } else {
+            flushStringBuffer();
+            stringView.set(stringBuffer, null == stringBuffer ? 0 : stringBuffer.position());
+        }
+        visitor.visit(stringView, tsLine, tsOffset);
+        clearStringBuffer();
+    }
+
+    /**
+     * Enable (or disable) visiting space and comment tokens, which otherwise
+     * allocate a {@code String} per token.
+     *
+     * @param trivia false to skip visiting space and comments.
+     */
+    void setTrivia(boolean trivia) {
+        this.trivia = trivia;
+    }
+
+    /**
+     * Record the start of every line into an index, which must be cleared
+     * before lexing begins.
+     *
+     * @param lineIndex the index to populate, or null to stop indexing lines.
+     */
+    void setLineIndex(JSON5LineIndex lineIndex) {
+        this.lineIndex = lineIndex;
+    }
+
+    /**
+     * Continue counting lines and offsets from a position within a larger input,
+     * must be called after {@link #reset()} and before lexing begins.
+     *
+     * @param line   line number of the first byte of input.
+     * @param offset offset of the first byte of input.
+     */
+    void setStart(int line, long offset) {
+        this.line = line;
+        this.offset = offset;
+    }
+
+    @Override
+    protected void newLine() {
+        super.newLine();
+        if (null != lineIndex)
+            lineIndex.add(offset + p);
+    }
+
+    /**
+     * Drop all references to the input, must be called before a buffer is unmapped
+     * so a view retained by a visitor can not access the unmapped memory.
+     */
+    void releaseData() {
+        data = null;
+        array = null;
+        stringView.clear();
+        numberView.clear();
+    }
+
+    @Override
+    public void trimBuffers(int maxCapacity) {
+        super.trimBuffers(maxCapacity);
+        stringView.trimBuffers(maxCapacity);
+    }
+
     @Override
     protected void exponentOverflow(int num) {
         // FIXME: Can a number have a newline within it? If so, the
@@ -69,44 +171,100 @@ class JSON5Lexer extends Ragel {
     }
 
     @Override
-    protected void visitNumber(BigInteger bigInt) {
-        visitor.visitNumber(bigInt, tsLine, tsOffset);
+    protected void limitExceeded(int limit, long max) {
+        switch (limit) {
+        case LIMIT_TOKEN_BYTES:
+            // The unfinished token begins at ts:
+            visitor.limitExceeded("Token exceeds " + max + " bytes", tsLine, offset + ts);
+            break;
+        case LIMIT_STRING_CHARS:
+            visitor.limitExceeded("String exceeds " + max + " chars", tsLine, tsOffset);
+            break;
+        case LIMIT_NUMBER_DIGITS:
+            visitor.limitExceeded("Number exceeds " + max + " digits", tsLine, tsOffset);
+            break;
+        default:
+            visitor.limitExceeded("Document exceeds " + max + " bytes", line, offset + p);
+        }
+    }
+
+    @Override
+    protected void visitNumber() {
+        numberView.set(NUMBER_KINDS[getNumberType()], data, ts, te);
+        try {
+            visitor.visitNumber(numberView, tsLine, tsOffset);
+        } finally {
+            numberView.clear();
+        }
     }
 
+    // Overridden so JSON5NumberView can access these:
+
     @Override
-    protected void visitNumber(BigDecimal bigDec) {
-        visitor.visitNumber(bigDec, tsLine, tsOffset);
+    protected long getNumberLong() {
+        return super.getNumberLong();
     }
 
     @Override
-    protected void visitNumber(long smallInt) {
-        visitor.visitNumber(smallInt, tsLine, tsOffset);
+    protected double getNumberDouble() {
+        return super.getNumberDouble();
     }
 
     @Override
-    protected void visitNumber(double smallDec) {
-        visitor.visitNumber(smallDec, tsLine, tsOffset);
+    protected BigInteger getNumberBigInteger() {
+        return super.getNumberBigInteger();
     }
-    %% machine json5;
+
+    @Override
+    protected BigDecimal getNumberBigDecimal() {
+        return super.getNumberBigDecimal();
+    }
+
+    // The json5_lexer grammar below is instantiated twice, once reading the
+    // backing array of heap buffers and once reading through the ByteBuffer, so
+    // getkey doesn't need to test which kind of input it has for every byte. Both
+    // machines are built from the same definitions, so their states are the same.
+    %% machine json5_heap;
+    %% alphtype int;
+    %% getkey (array[arrayOffset + p] & 0xff);
+    %% include json5_lexer;
+    %% write data;
+    %% machine json5_buffer;
     %% alphtype int;
     %% getkey (data.get(p) & 0xff);
+    %% include json5_lexer;
     %% write data;
     @Override
     protected void ragelInit() {
+        %% machine json5_heap;
         %% write init;
     }
     @Override
     protected void ragelExec() {
-        %% write exec;
+        if (null != array) {
+            execHeap();
+        } else {
+            execBuffer();
+        }
         if ( p == eof ) {
             visitor.endOfStream(line, offset + p);
         }
     }
+    private void execHeap() {
+        %% machine json5_heap;
+        %% write exec;
+    }
+    private void execBuffer() {
+        %% machine json5_buffer;
+        %% write exec;
+    }
 }
 
 // Assumes input in UTF-8 byte array encoding.
 %%{
 
+machine json5_lexer;
+
 include Unicode_UTF8 "Unicode_UTF8.rl";
 
 # ECMA 26.2 parts:
@@ -116,7 +274,7 @@ LineTerminatorSequence =
       CR | # FIXME: lookahead not LF
       LS |
       PS |
-      CR LF ) %{ line++; };
+      CR LF ) %{ newLine(); };
 HexDigit = [0-9a-fA-F];
 DecimalDigit = [0-9];
 NonZeroDigit = [1-9];
@@ -214,8 +372,10 @@ SingleLineComment =
     "//" (any -- LineTerminatorSequence)* LineTerminatorSequence
     # Bummer, wish we could just "match" eof...
     $eof{
-        appendStringBufferUTF8(ts, p--);
-        visitor.visitComment(resetStringBuffer(), tsLine, tsOffset);
+        if (trivia) {
+            visitor.visitComment(decodeStringUTF8(ts, p), tsLine, tsOffset);
+        }
+        p--;
         fbreak;
     };
 
@@ -295,11 +455,13 @@ Space =
 # JSON5InputElement
 main := |*
     Space              > { tokenStart(); }
-        {   appendStringBufferUTF8(ts, te);
-            visitor.visitSpace(resetStringBuffer(), tsLine, tsOffset); };
+        {   if (trivia) {
+                visitor.visitSpace(decodeStringUTF8(ts, te), tsLine, tsOffset);
+            } };
     Comment            > { tokenStart(); }
-        {   appendStringBufferUTF8(ts, te);
-            visitor.visitComment(resetStringBuffer(), tsLine, tsOffset); };
+        {   if (trivia) {
+                visitor.visitComment(decodeStringUTF8(ts, te), tsLine, tsOffset);
+            } };
     "{"                > { tokenStart(); }
         { visitor.startObject(tsLine, tsOffset); };
     "}"                > { tokenStart(); }
@@ -313,17 +475,17 @@ main := |*
     ":"                > { tokenStart(); }
         { visitor.visitColon(tsLine, tsOffset); };
     "null"             > { tokenStart(); }
-        { visitor.visitNull(tsLine, tsOffset); stringBuffer.clear(); };
+        { visitor.visitNull(tsLine, tsOffset); clearStringBuffer(); };
     "true"             > { tokenStart(); }
-        { visitor.visit(true, tsLine, tsOffset); stringBuffer.clear(); };
+        { visitor.visit(true, tsLine, tsOffset); clearStringBuffer(); };
     "false"            > { tokenStart(); }
-        { visitor.visit(false, tsLine, tsOffset); stringBuffer.clear(); };
+        { visitor.visit(false, tsLine, tsOffset); clearStringBuffer(); };
     JSON5Number        > { tokenStart(); inFraction=false; }
-        { resetNumber(); };
+        { resetNumber(); clearStringBuffer(); };
     JSON5Identifier    > { tokenStart(); }
-        { visitor.visit(resetStringBuffer(), tsLine, tsOffset); };
+        { visitString(); };
     JSON5String        > { tokenStart(); }
-        { visitor.visit(resetStringBuffer(), tsLine, tsOffset); };
+        { visitString(); };
     any                > { tokenStart(); }
         { visitor.unexpectedByte(data.get(p), tsLine, tsOffset); };
 *|;
@@ -1,25 +1,51 @@
 package com.brimworks.json5;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import com.brimworks.json5.ragel.Ragel;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
@@ -110,7 +136,77 @@ public class JSON5ParserTest {
     @Test
     public void parseFloats() throws IOException {
         assertParsed("0.0", Double.valueOf(0.0));
+        assertParsed("-0.0", Double.valueOf(-0.0));
         assertParsed("10.0", Double.valueOf(10.0));
+        assertParsed("0.1", Double.valueOf(0.1));
+        assertParsed("-1.5e-3", Double.valueOf(-1.5e-3));
+        assertParsed("1e22", Double.valueOf(1e22));
+        assertParsed("1e23", Double.valueOf(1e23));
+
+        // Rounded to the nearest double:
+        assertParsed("9.007199254740993e+15", Double.valueOf(9.007199254740992e+15));
+        assertParsed("9.1e+15", Double.valueOf(9.1e+15));
+        assertParsed("9.0000000000000000", Double.valueOf(9.0));
+        assertParsed("3.141592653589793238", Double.valueOf(Math.PI));
+        assertParsed("1.7976931348623157e308", Double.valueOf(Double.MAX_VALUE));
+        assertParsed("2.2250738585072011e-308", Double.valueOf(2.225073858507201e-308));
+        assertParsed("4.9e-324", Double.valueOf(Double.MIN_VALUE));
+
+        // Out of the range of a double:
+        assertParsed("1e400", new BigDecimal("1e400"));
+        assertParsed("-1e-400", new BigDecimal("-1e-400"));
+
+        // More than 19 significant digits:
+        assertParsed("9223372036854775808.0", Double.valueOf(9223372036854775808.0));
+        assertParsed("-9223372036854775808.0", Double.valueOf(-9223372036854775808.0));
+        assertParsed("3.14159265358979323846264338327950288", Double.valueOf(Math.PI));
+        assertParsed("1.00000000000000000000000000000000001e-310", Double.valueOf(1e-310));
+        // Exactly half way between two doubles rounds to even:
+        assertParsed("9007199254740993.000000000000000000000", Double.valueOf(9007199254740992.0));
+        // But a digit beyond the leading 19 breaks the tie:
+        assertParsed("9007199254740993.000000000000000000001", Double.valueOf(9007199254740994.0));
+        assertParsed("123456789012345678901234567890e400", new BigDecimal("123456789012345678901234567890e400"));
+
+        // Threshold we should be promoting to BigInteger for integer values:
+        assertParsed("9223372036854775807", Long.valueOf(9223372036854775807L));
+        assertParsed("9223372036854775808", new BigInteger("9223372036854775808"));
+
+        // Special numbers:
+        assertParsed("NaN", Double.valueOf(Double.NaN));
+        assertParsed("-Infinity", Double.valueOf(Double.NEGATIVE_INFINITY));
+        assertParsed("+Infinity", Double.valueOf(Double.POSITIVE_INFINITY));
+    }
+
+    @Tag("unit")
+    @Test
+    public void parseLongDecimals() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder txt = new StringBuilder();
+            txt.append(1 + random.nextInt(9));
+            int digits = 19 + random.nextInt(30);
+            for (int j = 1; j < digits; j++) {
+                // Mostly runs of 0s and 9s, which are near a rounding boundary:
+                int kind = random.nextInt(3);
+                txt.append(0 == kind ? '0' : 1 == kind ? '9' : (char) ('0' + random.nextInt(10)));
+            }
+            txt.insert(1 + random.nextInt(digits), '.');
+            txt.append('e').append(random.nextInt(640) - 340);
+            double expect = Double.parseDouble(txt.toString());
+            // Out of the range of a double, or a BigInteger, see parseFloats():
+            if (Double.isInfinite(expect) || 0 == expect || 0 == new BigDecimal(txt.toString()).scale())
+                continue;
+            assertParsed(txt.toString(), Double.valueOf(expect));
+        }
+    }
+
+    @Tag("unit")
+    @Test
+    public void parseFloatsLossless() throws IOException {
+        parser.setLosslessDecimals(true);
+        assertParsed("0.0", Double.valueOf(0.0));
+        assertParsed("10.0", Double.valueOf(10.0));
+        assertParsed("0.1", new BigDecimal("0.1"));
 
         // Threshold we should be promoting to BigDecimal for floating values:
         assertParsed("9.007199254740991e+15", Double.valueOf(9.007199254740991e+15));
@@ -159,6 +255,7 @@ public class JSON5ParserTest {
 
         assertParsed("-0x7FFFFFFFFFFFFFFF", Long.valueOf(-0x7FFFFFFFFFFFFFFFL));
         assertParsed("-0x8000000000000000", new BigInteger("-9223372036854775808"));
+        assertParsed("0x10000000000000000", new BigInteger("18446744073709551616"));
     }
 
     @Tag("unit")
@@ -169,6 +266,1374 @@ public class JSON5ParserTest {
         assertParsed("\"\"", "");
     }
 
+    @Tag("unit")
+    @Test
+    public void parseStringView() throws IOException {
+        List<String> got = new ArrayList<>();
+        parser.setVisitor(new JSON5Visitor() {
+            @Override
+            public void visit(JSON5StringView val, int line, long offset) {
+                ByteBuffer raw = val.getRawUTF8();
+                got.add((null == raw ? "escaped " : "raw ") + val.length() + " " + val);
+            }
+
+            @Override
+            public void visitKey(JSON5StringView key, int line, long offset) {
+                got.add("key " + key.contentEquals("b\u00e9") + " " + key.contentEquals("be"));
+            }
+        });
+        parser.parse("[\"hello\", 'a\\nb', \"\", NaN, '\u00e9t\u00e9', {b\u00e9: x\\u0041}]", SOURCE);
+        assertEquals(Arrays.asList("raw 5 hello", "escaped 3 a\nb", "escaped 0 ", "raw 3 \u00e9t\u00e9",
+                "key true false", "escaped 2 xA"), got);
+
+        // A string must be in key position to be followed by ':'
+        assertThrows(JSON5ParseError.class, () -> parser.parse("['a': 1]", SOURCE));
+    }
+
+    @Tag("unit")
+    @Test
+    public void parseNumberView() throws IOException {
+        List<String> got = new ArrayList<>();
+        JSON5NumberView[] last = new JSON5NumberView[1];
+        parser.setVisitor(new JSON5Visitor() {
+            @Override
+            public void visitNumber(JSON5NumberView val, int line, long offset) {
+                got.add(val.getKind() + " " + val + " " + val.getRawUTF8().remaining());
+                last[0] = val;
+            }
+
+            @Override
+            public void visit(Number val, int line, long offset) {
+                fail("Number should not be materialized: " + val);
+            }
+        });
+        parser.parse("[1, -2.50, +0x1F, .5, 5., -92233720368547758070, 1.5e400, NaN, -Infinity]", SOURCE);
+        assertEquals(Arrays.asList("LONG 1 1", "DOUBLE -2.50 5", "LONG +0x1F 5", "DOUBLE .5 2", "LONG 5. 2",
+                "BIG_INTEGER -92233720368547758070 21", "BIG_DECIMAL 1.5e400 7", "SPECIAL NaN 3",
+                "SPECIAL -Infinity 9"), got);
+        // Only valid within the visitor call:
+        assertThrows(IllegalStateException.class, () -> last[0].longValue());
+
+        List<Object> values = new ArrayList<>();
+        parser.setVisitor(new JSON5Visitor() {
+            @Override
+            public void visitNumber(JSON5NumberView val, int line, long offset) {
+                values.add(val.toNumber());
+                values.add(val.longValue());
+                values.add(val.doubleValue());
+                values.add(val.bigDecimalValue());
+                values.add(val.bigIntegerValue());
+            }
+        });
+        parser.parse("[-2.50, 0x10000000000000000, 12345678901234567890.5e1]", SOURCE);
+        assertEquals(Arrays.asList(Double.valueOf(-2.5), Long.valueOf(-2), Double.valueOf(-2.5),
+                new BigDecimal("-2.50"), BigInteger.valueOf(-2), new BigInteger("18446744073709551616"),
+                Long.valueOf(0), Double.valueOf(1.8446744073709552e19), new BigDecimal("18446744073709551616"),
+                new BigInteger("18446744073709551616"), new BigInteger("123456789012345678905"),
+                Long.valueOf(new BigInteger("123456789012345678905").longValue()),
+                Double.valueOf(1.2345678901234568e20), new BigDecimal("12345678901234567890.5e1"),
+                new BigInteger("123456789012345678905")), values);
+    }
+
+    @Tag("unit")
+    @Test
+    public void projection() throws IOException {
+        List<String> got = new ArrayList<>();
+        parser.setVisitor(new JSON5Visitor() {
+            @Override
+            public void visit(String val, int line, long offset) {
+                got.add("'" + val + "'");
+            }
+
+            @Override
+            public void visit(Number val, int line, long offset) {
+                got.add(val.toString());
+            }
+
+            @Override
+            public void visitKey(String key, int line, long offset) {
+                got.add(key + ":");
+            }
+
+            @Override
+            public void visitIndex(int index, int line, long offset) {
+                got.add(index + ":");
+            }
+
+            @Override
+            public void startObject(int line, long offset) {
+                got.add("{");
+            }
+
+            @Override
+            public void endObject(int line, long offset) {
+                got.add("}");
+            }
+
+            @Override
+            public void startArray(int line, long offset) {
+                got.add("[");
+            }
+
+            @Override
+            public void endArray(int line, long offset) {
+                got.add("]");
+            }
+
+            @Override
+            public void endObjectPair(String key, int line, long offset) {
+                got.add("/" + key);
+            }
+
+            @Override
+            public void visitComment(String comment, int line, long offset) {
+                got.add(comment);
+            }
+        });
+        parser.setProjection(new JSON5Projection("/users/*/name", "/meta/version", "/~*", "/users/1/extra/1"));
+        parser.parse("{\n" +
+                "  // comment\n" +
+                "  meta: {version: 2, tags: ['a', 'b']},\n" +
+                "  users: [\n" +
+                "    {id: 1, name: 'ann', address: {city: 'x\\ny'}},\n" +
+                "    {id: 2, name: \"bob\", extra: [1, {name: 'nested'}]},\n" +
+                "  ],\n" +
+                "  '*': 5,\n" +
+                "  count: 2.5e400,\n" +
+                "}", SOURCE);
+        assertEquals(Arrays.asList("{", "meta:", "{", "version:", "2", "/version", "}", "/meta", "users:", "[", "0:", "{",
+                "name:", "'ann'", "/name", "}", "1:", "{", "name:", "'bob'", "/name", "extra:", "[", "1:", "{", "name:",
+                "'nested'", "/name", "}", "]", "/extra", "}", "]", "/users", "*:", "5", "/*", "}"), got);
+        // Keys within skipped subtrees (city) are never materialized:
+        assertEquals(10, parser.getSymbolTable().getMisses());
+
+        // Skipped subtrees are still validated:
+        JSON5ParseError err = assertThrows(JSON5ParseError.class, () -> parser.parse("{a: {b: [1, 2}}", SOURCE));
+        assertEquals("location: /a", err.getMessage().substring(err.getMessage().lastIndexOf('\n') + 1));
+
+        got.clear();
+        parser.setProjection(new JSON5Projection("/"));
+        parser.parse("[1]", SOURCE);
+        assertEquals(Arrays.asList("[", "0:", "1", "]"), got);
+    }
+
+    @Tag("unit")
+    @Test
+    public void interests() throws Exception {
+        List<String> got = new ArrayList<>();
+        Set<JSON5Visitor.Interest> interests = EnumSet.allOf(JSON5Visitor.Interest.class);
+        JSON5Visitor visitor = new JSON5Visitor() {
+            @Override
+            public Set<Interest> getInterests() {
+                return interests;
+            }
+
+            @Override
+            public void visit(String val, int line, long offset) {
+                got.add("'" + val + "'");
+            }
+
+            @Override
+            public void visit(Number val, int line, long offset) {
+                got.add(val.toString());
+            }
+
+            @Override
+            public void visitKey(String key, int line, long offset) {
+                got.add(key + ":");
+            }
+
+            @Override
+            public void visitIndex(int index, int line, long offset) {
+                got.add(index + ":");
+            }
+
+            @Override
+            public void startObject(int line, long offset) {
+                got.add("{");
+            }
+
+            @Override
+            public void endObject(int line, long offset) {
+                got.add("}");
+            }
+
+            @Override
+            public void endObjectPair(String key, int line, long offset) {
+                got.add("/" + key);
+            }
+
+            @Override
+            public void visitSpace(String space, int line, long offset) {
+                got.add("_");
+            }
+
+            @Override
+            public void visitComment(String comment, int line, long offset) {
+                got.add(comment);
+            }
+
+            @Override
+            public void visitComma(int line, long offset) {
+                got.add(",");
+            }
+        };
+        String input = "{a: 'x\\ny', b: 1} // end";
+        parser.setVisitor(visitor);
+        parser.parse(input, SOURCE);
+        assertEquals(Arrays.asList("{", "a:", "_", "'x\ny'", "/a", ",", "_", "b:", "_", "1", "/b", "}", "_",
+                "// end"), got);
+
+        // Interests are read when the visitor is set:
+        got.clear();
+        interests.remove(JSON5Visitor.Interest.TRIVIA);
+        interests.remove(JSON5Visitor.Interest.LOCATIONS);
+        parser.setVisitor(visitor);
+        parser.parse(input, SOURCE);
+        assertEquals(Arrays.asList("{", "a:", "'x\ny'", "b:", "1", "}"), got);
+
+        got.clear();
+        interests.clear();
+        parser.setVisitor(visitor);
+        parser.parse(input, SOURCE);
+        assertEquals(Arrays.asList("{", "}"), got);
+
+        // Keys are still tracked for errors even when not visited:
+        JSON5ParseError err = assertThrows(JSON5ParseError.class,
+                () -> parser.parse("{a: 'x', b: {c: 'y' d: 1}}", SOURCE));
+        assertEquals("location: /b/c", err.getMessage().substring(err.getMessage().lastIndexOf('\n') + 1));
+
+        // Lexing a channel resets the lexer, which must not resume accumulating
+        // the strings and numbers that will not be visited, even at the root:
+        Field field = JSON5Parser.class.getDeclaredField("lexer");
+        field.setAccessible(true);
+        JSON5Lexer lexer = (JSON5Lexer) field.get(parser);
+        List<Boolean> discarding = new ArrayList<>();
+        parser.setVisitor(new JSON5Visitor() {
+            @Override
+            public Set<Interest> getInterests() {
+                return EnumSet.noneOf(Interest.class);
+            }
+
+            @Override
+            public void visit(boolean val, int line, long offset) {
+                discarding.add(lexer.isDiscarding());
+            }
+        });
+        byte[] utf8 = "true".getBytes(UTF_8);
+        parser.parse(Channels.newChannel(new ByteArrayInputStream(utf8)), SOURCE, null);
+        parser.setReadAhead(Runnable::run);
+        parser.parse(Channels.newChannel(new ByteArrayInputStream(utf8)), SOURCE, null);
+        parser.setReadAhead(null);
+        assertEquals(Arrays.asList(true, true), discarding);
+    }
+
+    @Tag("unit")
+    @Test
+    public void validate(@TempDir Path tmp) throws IOException {
+        List<String> got = new ArrayList<>();
+        parser.setVisitor(new JSON5Visitor() {
+            @Override
+            public void visit(Number val, int line, long offset) {
+                got.add(val.toString());
+            }
+
+            @Override
+            public void endOfStream(int line, long offset) {
+                got.add("EOF");
+            }
+        });
+        parser.setProjection(new JSON5Projection("/a"));
+        parser.validate("{a: 1, b: ['x\\u0041', {c: 2.5e400}], /* comment */ d: Infinity}", SOURCE);
+        assertEquals(Arrays.asList(), got);
+        assertEquals(0, parser.getSymbolTable().getMisses());
+
+        // Errors are identical to the ones thrown by parse():
+        for (String input : Arrays.asList("{a: [1, {b: 2 c: 3}]}", "{a: [1, 2}", "[1, 2", "{a: 1e3000000000}")) {
+            JSON5ParseError expect = assertThrows(JSON5ParseError.class, () -> parser.parse(input, SOURCE));
+            got.clear();
+            JSON5ParseError err = assertThrows(JSON5ParseError.class, () -> parser.validate(input, SOURCE));
+            assertEquals(expect.getMessage(), err.getMessage());
+            assertEquals(Arrays.asList(), got);
+        }
+        Path file = tmp.resolve("invalid.json5");
+        Files.write(file, "{\n  a: [1, {b: 2 c: 3}]\n}".getBytes(UTF_8));
+        JSON5ParseError err = assertThrows(JSON5ParseError.class, () -> parser.validate(file));
+        assertEquals(2, err.getLocation().getLineNumber());
+        assertEquals("location: /a/1/b", err.getMessage().substring(err.getMessage().lastIndexOf('\n') + 1));
+
+        // The visitor and projection are still in effect for parse():
+        parser.parse("{a: 1, b: 2}", SOURCE);
+        assertEquals(Arrays.asList("1", "EOF"), got);
+    }
+
+    @Tag("unit")
+    @Test
+    public void transitionErrors() {
+        Map<String, String> errors = new LinkedHashMap<>();
+        errors.put("", "Empty content");
+        errors.put(":", "Unexpected ':'");
+        errors.put(",", "Unexpected ','");
+        errors.put("1 2", "Expected end of stream");
+        errors.put("'a' {", "Expected end of stream");
+        errors.put("1:", "Unexpected ':'");
+        errors.put("{1: 2}", "Object keys must be a string");
+        errors.put("{[", "Object keys must be a string");
+        errors.put("{,", "Unexpected ','");
+        errors.put("{", "Missing '}'");
+        errors.put("{a:", "Missing '}'");
+        errors.put("{a: ,", "Unexpected ','");
+        errors.put("{a: 1 b", "Expected end of stream");
+        errors.put("{a: 1", "Expected '}' before end of file to match with '{' on line 1");
+        errors.put("[", "Missing ']'");
+        errors.put("[1,,", "Unexpected ','");
+        errors.put("[1,", "Missing ']'");
+        errors.put("[1 :", "Unexpected ':'");
+        errors.put("['a' :", "Unexpected ':'");
+        errors.put("[1", "Expected ']' before end of file to match with '[' on line 1");
+        errors.put("[}", "Expected ']' to match with '[' on line 1");
+        errors.put("{]", "Expected '}' to match with '{' on line 1");
+        errors.put("]", "Unexpected ']'");
+        for (Map.Entry<String, String> entry : errors.entrySet()) {
+            JSON5ParseError err = assertThrows(JSON5ParseError.class, () -> parser.parse(entry.getKey(), SOURCE));
+            String msg = err.getMessage();
+            assertEquals(entry.getValue(), msg.substring(msg.indexOf(": ") + 2, msg.indexOf('\n')), entry.getKey());
+        }
+    }
+
+    @Tag("unit")
+    @Test
+    public void errorLocation() {
+        JSON5ParseError err = assertThrows(JSON5ParseError.class,
+                () -> parser.parse("[[1, 2], {a: [3, {b: 4 c}]}]", SOURCE));
+        assertEquals("location: /1/a/1/b", err.getMessage().substring(err.getMessage().lastIndexOf('\n') + 1));
+        assertEquals(23, err.getLocation().getByteOffset());
+
+        // Deeper than the initial capacity of the container stack:
+        StringBuilder input = new StringBuilder();
+        StringBuilder expect = new StringBuilder("location: ");
+        for (int i = 0; i < 40; i++) {
+            input.append("[0, {k").append(i).append(": ");
+            expect.append("/1/k").append(i);
+        }
+        err = assertThrows(JSON5ParseError.class, () -> parser.parse(input + ":", SOURCE));
+        assertEquals(expect.toString(), err.getMessage().substring(err.getMessage().lastIndexOf('\n') + 1));
+    }
+
+    @Tag("unit")
+    @Test
+    public void position() {
+        List<JSON5Position> positions = new ArrayList<>();
+        parser.setVisitor(new JSON5Visitor() {
+            @Override
+            public void visitNumber(long val, int line, long offset) {
+                positions.add(parser.getPosition(line, offset));
+            }
+        });
+        parser.parse("{a: [1, 2],\n b: {c: 3, d: [[4]]}}", SOURCE);
+        assertEquals(Arrays.asList(SOURCE + ":1: /a/0", SOURCE + ":1: /a/1", SOURCE + ":2: /b/c",
+                SOURCE + ":2: /b/d/0/0"), positions.stream().map(Object::toString).collect(Collectors.toList()));
+        // Keys are shared with the symbol table:
+        assertSame(positions.get(0).getPath().get(0), positions.get(1).getPath().get(0));
+        JSON5Location location = positions.get(2).toLocation();
+        assertEquals(2, location.getLineNumber());
+        assertEquals(20, location.getByteOffset());
+        assertEquals(" b: {c: 3, d: [[4]]}}", location.getContextLine());
+        assertEquals("location: /b/c", location.format("x").substring(location.format("x").lastIndexOf('\n') + 1));
+    }
+
+    @Tag("unit")
+    @Test
+    public void lineIndex() {
+        JSON5LineIndex lines = new JSON5LineIndex();
+        parser.setLineIndex(lines);
+        String input = "{a: 1,\r\n b: 'x\\\ny',\n // c\n c: :}";
+        JSON5ParseError err = assertThrows(JSON5ParseError.class, () -> parser.parse(input, SOURCE));
+        assertEquals(5, lines.getLineCount());
+        assertEquals(Arrays.asList(0L, 8L, 16L, 20L, 26L), IntStream.rangeClosed(1, 5)
+                .mapToObj(lines::getLineStart).collect(Collectors.toList()));
+        assertThrows(IndexOutOfBoundsException.class, () -> lines.getLineStart(6));
+        assertEquals(1, lines.getLineNumber(7));
+        assertEquals(2, lines.getLineNumber(8));
+        assertEquals(5, lines.getLineNumber(30));
+        assertEquals(5, err.getLocation().getLineNumber());
+        assertEquals(" c: :}", err.getLocation().getContextLine());
+        assertEquals(4, err.getLocation().getContextLineOffset());
+
+        // Only the line is read, with a LS split between two reads:
+        StringBuilder line = new StringBuilder("  ");
+        for (int i = 0; i < 517; i++) {
+            line.append('a');
+        }
+        byte[] utf8 = ("x\n" + line + "\u2028next").getBytes(UTF_8);
+        List<Integer> reads = new ArrayList<>();
+        JSON5Location location = new JSON5Location(2, 4, 2, SOURCE, Collections.emptyList(), (into, skip) -> {
+            reads.add(into.remaining());
+            int len = Math.min(into.remaining(), utf8.length - (int) skip);
+            into.put(utf8, (int) skip, len);
+            return len;
+        });
+        assertEquals(line.toString(), location.getContextLine());
+        assertEquals(2, location.getContextLineOffset());
+        assertEquals(Arrays.asList(130, 130, 260, 520), reads);
+        assertSame(location.getContextLine(), location.getContextLine());
+        assertEquals(4, reads.size());
+
+        // Cleared between parses:
+        parser.parse("[\n1]", SOURCE);
+        assertEquals(2, lines.getLineCount());
+        assertEquals(2, lines.getLineStart(2));
+
+        // Indexing can be disabled:
+        parser.setLineIndex(null).parse("[\n1,\n2]", SOURCE);
+        assertEquals(2, lines.getLineCount());
+    }
+
+    @Tag("unit")
+    @Test
+    public void structuralIndex() {
+        String input = "{\"a\\\"}\": [1, 'b\\\\'], // x, y\u2028 z: [/* ] */ {c: \"\u00e9,\"}],\n//:\r\n}";
+        JSON5StructuralIndex index = new JSON5StructuralIndex().index(ByteBuffer.wrap(input.getBytes(UTF_8)));
+        assertArrayEquals(new int[] { 0, 1, 7, 9, 11, 13, 18, 19, 33, 35, 44, 46, 48, 53, 54, 55, 62 },
+                IntStream.range(0, index.size()).map(index::getOffset).toArray());
+        // Same content as the parser sees:
+        List<Long> offsets = new ArrayList<>();
+        parser.setVisitor(new JSON5Visitor() {
+            @Override
+            public void startObject(int line, long offset) {
+                offsets.add(offset);
+            }
+
+            @Override
+            public void startArray(int line, long offset) {
+                offsets.add(offset);
+            }
+        }).parse(input, SOURCE);
+        assertEquals(Arrays.asList(0L, 9L, 35L, 44L), offsets);
+
+        // Offsets are relative to the buffer, and long strings span many words:
+        StringBuilder sb = new StringBuilder("xx[\"");
+        for (int i = 0; i < 100; i++) {
+            sb.append("[{,:}] ");
+        }
+        sb.append("\",{}]");
+        ByteBuffer data = ByteBuffer.wrap(sb.toString().getBytes(UTF_8));
+        data.position(2);
+        index.index(data);
+        int end = sb.length() - 4;
+        assertArrayEquals(new int[] { 2, 3, end, end + 1, end + 2, end + 3 },
+                IntStream.range(0, index.size()).map(index::getOffset).toArray());
+        assertEquals(2, data.position());
+        assertThrows(IndexOutOfBoundsException.class, () -> index.getOffset(6));
+    }
+
+    @Tag("unit")
+    @Test
+    public void asciiStrings() {
+        assertEquals(3, Ragel.skipAscii(ByteBuffer.wrap("abc".getBytes(UTF_8)), 0, 3));
+        assertEquals(10, Ragel.skipAscii(ByteBuffer.wrap("0123456789\u00e9".getBytes(UTF_8)), 1, 12));
+        assertEquals(17, Ragel.skipAscii(ByteBuffer.wrap("0123456789abcdefg\u00e9".getBytes(UTF_8)), 0, 19));
+
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            big.append("0123456789");
+        }
+        List<String> expect = Arrays.asList("plain ascii which spans words", "\ttab then ascii, \u00e9 then ascii",
+                "\u2028" + big + "\u00e9", "x\ny\u00e9\u00e9z");
+        List<String> strings = new ArrayList<>();
+        parser.setVisitor(new JSON5Visitor() {
+            @Override
+            public void visit(String val, int line, long offset) {
+                strings.add(val);
+            }
+        }).parse("['plain ascii which spans words', '\\ttab then ascii, \u00e9 then ascii', '\\u2028" + big
+                + "\u00e9', \"x\\ny\u00e9\u00e9z\"]", SOURCE);
+        assertEquals(expect, strings);
+    }
+
+    @Tag("unit")
+    @Test
+    public void heapAndDirectBuffers() throws Exception {
+        byte[] utf8 = "{a: 'b\\n\u00e9', c: [1.5, \"d\"]}".getBytes(UTF_8);
+        List<String> events = new ArrayList<>();
+        // Whether the lexer reads the backing array when each string is visited:
+        Field lexerField = JSON5Parser.class.getDeclaredField("lexer");
+        lexerField.setAccessible(true);
+        Ragel lexer = (Ragel) lexerField.get(parser);
+        Field arrayField = Ragel.class.getDeclaredField("array");
+        arrayField.setAccessible(true);
+        List<Boolean> heap = new ArrayList<>();
+        parser.setVisitor(new JSON5Visitor() {
+            @Override
+            public void visit(String val, int line, long offset) {
+                events.add(val + "@" + offset);
+                try {
+                    heap.add(null != arrayField.get(lexer));
+                } catch (IllegalAccessException ex) {
+                    throw new AssertionError(ex);
+                }
+            }
+
+            @Override
+            public void visitNumber(double val, int line, long offset) {
+                events.add(val + "@" + offset);
+            }
+        });
+        parser.parse(utf8, SOURCE);
+        List<String> expect = Arrays.asList("b\n\u00e9@4", "1.5@17", "d@22");
+        assertEquals(expect, events);
+
+        // A heap buffer with a non-zero array offset:
+        byte[] padded = new byte[utf8.length + 3];
+        System.arraycopy(utf8, 0, padded, 3, utf8.length);
+        ByteBuffer slice = ByteBuffer.wrap(padded, 3, utf8.length).slice();
+        events.clear();
+        heap.clear();
+        parser.parse(slice, SOURCE);
+        assertEquals(expect, events);
+        assertEquals(Arrays.asList(true, true), heap);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(utf8.length);
+        direct.put(utf8).flip();
+        events.clear();
+        heap.clear();
+        parser.parse(direct, SOURCE);
+        assertEquals(expect, events);
+        assertEquals(Arrays.asList(false, false), heap);
+    }
+
+    /**
+     * Records every visit with its location, for comparing parses.
+     */
+    private static class Recorder implements JSON5Visitor {
+        protected final List<String> events = new ArrayList<>();
+
+        @Override
+        public void visitNull(int line, long offset) {
+            events.add("null@" + line + ":" + offset);
+        }
+
+        @Override
+        public void visit(boolean val, int line, long offset) {
+            events.add(val + "@" + line + ":" + offset);
+        }
+
+        @Override
+        public void visit(String val, int line, long offset) {
+            events.add("'" + val + "'@" + line + ":" + offset);
+        }
+
+        @Override
+        public void visit(Number val, int line, long offset) {
+            events.add(val + "@" + line + ":" + offset);
+        }
+
+        @Override
+        public void visitKey(String key, int line, long offset) {
+            events.add(key + ":@" + line + ":" + offset);
+        }
+
+        @Override
+        public void visitIndex(int index, int line, long offset) {
+            events.add("#" + index + "@" + line + ":" + offset);
+        }
+
+        @Override
+        public void startObject(int line, long offset) {
+            events.add("{@" + line + ":" + offset);
+        }
+
+        @Override
+        public void endObject(int line, long offset) {
+            events.add("}@" + line + ":" + offset);
+        }
+
+        @Override
+        public void startArray(int line, long offset) {
+            events.add("[@" + line + ":" + offset);
+        }
+
+        @Override
+        public void endArray(int line, long offset) {
+            events.add("]@" + line + ":" + offset);
+        }
+    }
+
+    @Tag("unit")
+    @Test
+    public void parallelArray() throws Exception {
+        StringBuilder sb = new StringBuilder("// leading ['comment'],\n[\n");
+        for (int i = 0; i < 200; i++) {
+            switch (i % 5) {
+            case 0:
+                sb.append("  {id: ").append(i).append(", tags: ['a,b', \"]}\"], nested: {x: [null, true]}},\n");
+                break;
+            case 1:
+                sb.append("  /* [block, comment\n */ ").append(i).append(",\n");
+                break;
+            case 2:
+                sb.append("  'line \\\n continued \\' ,[', // trailing ]\n");
+                break;
+            case 3:
+                sb.append("  [[], {}, \"\u00e9\\\"\"], ");
+                break;
+            default:
+                sb.append("\r\n  -").append(i).append(".5e1,");
+            }
+        }
+        sb.append("\n] // done\n");
+        ByteBuffer input = ByteBuffer.wrap(sb.toString().getBytes(UTF_8));
+
+        Recorder sequential = new Recorder();
+        parser.setVisitor(sequential).parse(input.duplicate(), SOURCE);
+        List<String> expect = sequential.events.subList(1, sequential.events.size() - 1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            JSON5ParallelParser parallel = new JSON5ParallelParser(new JSON5ParserPool(), executor);
+            for (int chunkSize : new int[] { 1, 7, 64, 1000, 1 << 20 }) {
+                parallel.setChunkSize(chunkSize).setOrdered(true);
+                List<String> got = new ArrayList<>();
+                for (Recorder recorder : parallel.parseArray(input, SOURCE, Recorder::new)) {
+                    got.addAll(recorder.events);
+                }
+                assertEquals(expect, got, "chunkSize=" + chunkSize);
+                assertEquals(0, input.position());
+
+                parallel.setOrdered(false);
+                got.clear();
+                for (Recorder recorder : parallel.parseArray(input, SOURCE, Recorder::new)) {
+                    got.addAll(recorder.events);
+                }
+                got.sort(null);
+                List<String> sorted = new ArrayList<>(expect);
+                sorted.sort(null);
+                assertEquals(sorted, got, "chunkSize=" + chunkSize);
+            }
+
+            // Empty arrays and trailing commas:
+            parallel.setChunkSize(1).setOrdered(true);
+            assertEquals(Arrays.asList(Arrays.asList("#0@1:1", "1@1:1"), Arrays.asList()),
+                    parallel.parseArray(ByteBuffer.wrap("[1,]".getBytes(UTF_8)), SOURCE, Recorder::new).stream()
+                            .map(recorder -> recorder.events).collect(Collectors.toList()));
+            assertEquals(1, parallel.parseArray(ByteBuffer.wrap(" [ ] ".getBytes(UTF_8)), SOURCE, Recorder::new)
+                    .size());
+
+            // Errors are identical to a sequential parse:
+            for (String invalid : new String[] { "[1, 2 3]", "[1,,2]", "[,]", "[1] 2", "x [1]", "[1, '2]", "[{a: 1]]",
+                    "[1, 2}", "[1] /* x", "[[1, 2]" }) {
+                JSON5ParseError expectErr = assertThrows(JSON5ParseError.class,
+                        () -> parser.parse(invalid, SOURCE), invalid);
+                for (int chunkSize : new int[] { 1, 3, 100 }) {
+                    parallel.setChunkSize(chunkSize);
+                    JSON5ParseError err = assertThrows(JSON5ParseError.class,
+                            () -> parallel.parseArray(ByteBuffer.wrap(invalid.getBytes(UTF_8)), SOURCE, Recorder::new),
+                            invalid);
+                    assertEquals(expectErr.getMessage(), err.getMessage(), invalid);
+                }
+            }
+            assertThrows(IllegalArgumentException.class,
+                    () -> parallel.parseArray(ByteBuffer.wrap("{a: [1, 2]}".getBytes(UTF_8)), SOURCE, Recorder::new));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Records trivia and the type of every number too.
+     */
+    private static class TypedRecorder extends Recorder {
+        @Override
+        public void visit(Number val, int line, long offset) {
+            events.add(val.getClass().getSimpleName() + " " + val + "@" + line + ":" + offset);
+        }
+
+        @Override
+        public void visitComment(String comment, int line, long offset) {
+            events.add(comment + "@" + line + ":" + offset);
+        }
+
+        @Override
+        public void visitSpace(String space, int line, long offset) {
+            events.add("'" + space + "'@" + line + ":" + offset);
+        }
+
+        @Override
+        public void visitColon(int line, long offset) {
+            events.add(":@" + line + ":" + offset);
+        }
+
+        @Override
+        public void visitComma(int line, long offset) {
+            events.add(",@" + line + ":" + offset);
+        }
+
+        @Override
+        public void endOfStream(int line, long offset) {
+            events.add("EOF@" + line + ":" + offset);
+        }
+    }
+
+    @Tag("unit")
+    @Test
+    public void pipeline() throws Exception {
+        // Large enough to wrap around the ring several times:
+        StringBuilder sb = new StringBuilder("// numbers and strings\n[\n");
+        for (int i = 0; i < 3000; i++) {
+            sb.append("  {id: ").append(i).append(", 'esc\\'aped': \"\u00e9\\n").append(i)
+                    .append("\", n: [0x").append(Integer.toHexString(i)).append(", -").append(i)
+                    .append(".25e-3, 123456789012345678901234567890, 0.1000000000000000000001, Infinity, NaN]},")
+                    .append(" /* block */\n");
+        }
+        sb.append("]\n");
+        String input = sb.toString();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (boolean lossless : new boolean[] { false, true }) {
+                parser.setLosslessDecimals(lossless);
+                TypedRecorder sequential = new TypedRecorder();
+                parser.setPipeline(null).setVisitor(sequential).parse(input, SOURCE);
+
+                TypedRecorder pipelined = new TypedRecorder();
+                parser.setPipeline(executor).setVisitor(pipelined).parse(input, SOURCE);
+                assertEquals(sequential.events, pipelined.events, "lossless=" + lossless);
+
+                // Without trivia or numbers (or strings, but keys are still
+                // decoded), the ring is reused:
+                for (Set<JSON5Visitor.Interest> interests : Arrays.asList(
+                        EnumSet.of(JSON5Visitor.Interest.STRINGS, JSON5Visitor.Interest.KEYS,
+                                JSON5Visitor.Interest.LOCATIONS),
+                        EnumSet.of(JSON5Visitor.Interest.KEYS, JSON5Visitor.Interest.LOCATIONS))) {
+                    List<List<String>> plain = new ArrayList<>();
+                    for (Executor pipeline : new Executor[] { null, executor }) {
+                        Recorder recorder = new Recorder() {
+                            @Override
+                            public Set<Interest> getInterests() {
+                                return interests;
+                            }
+                        };
+                        parser.setPipeline(pipeline).setVisitor(recorder).parse(input.getBytes(UTF_8), SOURCE);
+                        plain.add(recorder.events);
+                    }
+                    assertEquals(plain.get(0), plain.get(1), "lossless=" + lossless + " " + interests);
+                }
+            }
+
+            // The lexing thread discards the values which are not visited:
+            Field ringField = JSON5Parser.class.getDeclaredField("ring");
+            Field lexerField = JSON5TokenRing.class.getDeclaredField("lexer");
+            ringField.setAccessible(true);
+            lexerField.setAccessible(true);
+            JSON5Lexer ringLexer = (JSON5Lexer) lexerField.get(ringField.get(parser));
+            assertTrue(ringLexer.isDiscarding());
+            parser.setVisitor(new TypedRecorder()).parse(input, SOURCE);
+            assertFalse(ringLexer.isDiscarding());
+
+            // A projection is not pipelined, so its skipped subtrees are discarded:
+            JSON5Parser projected = new JSON5Parser(new Recorder()).setPipeline(executor)
+                    .setProjection(new JSON5Projection("/0"));
+            projected.parse(input, SOURCE);
+            assertNull(ringField.get(projected));
+            parser.setLosslessDecimals(false);
+
+            // Errors are identical to a sequential parse, and the parser is reusable:
+            for (String invalid : new String[] { "[1, 2 3]", "[1,,2]", "{a: 1]", "[1] 2", "[1, '2]", "[1] /* x",
+                    "[1, 2]]", "[\u0001]", input + "x" }) {
+                JSON5ParseError expect = assertThrows(JSON5ParseError.class,
+                        () -> parser.setPipeline(null).parse(invalid, SOURCE), invalid);
+                JSON5ParseError got = assertThrows(JSON5ParseError.class,
+                        () -> parser.setPipeline(executor).parse(invalid, SOURCE), invalid);
+                assertEquals(expect.getMessage(), got.getMessage(), invalid);
+            }
+            TypedRecorder after = new TypedRecorder();
+            parser.setVisitor(after).parse("[1]", SOURCE);
+            assertEquals(Arrays.asList("[@1:0", "#0@1:1", "Long 1@1:1", "]@1:2", "EOF@1:3"), after.events);
+
+            // An exception thrown by the visitor stops the lexer:
+            IllegalStateException stop = new IllegalStateException("stop");
+            assertSame(stop, assertThrows(IllegalStateException.class, () -> parser.setVisitor(new Recorder() {
+                @Override
+                public void visitIndex(int index, int line, long offset) {
+                    if (100 == index)
+                        throw stop;
+                }
+            }).parse(input, SOURCE)));
+
+            // An executor which runs the lexer on this thread disables the pipeline:
+            TypedRecorder inline = new TypedRecorder();
+            parser.setPipeline(Runnable::run).setVisitor(inline).parse(input, SOURCE);
+            parser.setPipeline(null);
+            TypedRecorder sequential = new TypedRecorder();
+            parser.setVisitor(sequential).parse(input, SOURCE);
+            assertEquals(sequential.events, inline.events);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * A channel which returns at most {@code step} bytes per read, then fails if
+     * {@code failAt} bytes were read.
+     */
+    private static ReadableByteChannel trickle(byte[] utf8, int step, int failAt) {
+        ByteBuffer src = ByteBuffer.wrap(utf8);
+        return new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                if (src.position() >= failAt)
+                    throw new IOException("failed");
+                if (!src.hasRemaining())
+                    return -1;
+                int count = Math.min(Math.min(step, dst.remaining()), src.remaining());
+                ByteBuffer slice = src.duplicate();
+                slice.limit(src.position() + count);
+                dst.put(slice);
+                src.position(src.position() + count);
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Tag("unit")
+    @Test
+    public void readAhead() throws Exception {
+        // Tokens span the chunks, and one string is longer than a whole chunk:
+        StringBuilder sb = new StringBuilder("[\n");
+        for (int i = 0; i < 5000; i++) {
+            sb.append("  {id: ").append(i).append(", name: 'item \\u00e9").append(i).append("'},\n");
+        }
+        sb.append("  '");
+        for (int i = 0; i < 100_000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        sb.append("', // done\n]\n");
+        byte[] utf8 = sb.toString().getBytes(UTF_8);
+
+        Recorder sequential = new Recorder();
+        parser.setVisitor(sequential).parse(Channels.newChannel(new ByteArrayInputStream(utf8)), SOURCE, null);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (Executor readAhead : new Executor[] { executor, Runnable::run }) {
+                parser.setReadAhead(readAhead);
+                for (int step : new int[] { 1000, 1 << 20 }) {
+                    Recorder recorder = new Recorder();
+                    parser.setVisitor(recorder).parse(trickle(utf8, step, Integer.MAX_VALUE), SOURCE, null);
+                    assertEquals(sequential.events, recorder.events, "step=" + step);
+                }
+            }
+            parser.setReadAhead(executor);
+
+            // Errors are identical to reading on the calling thread:
+            byte[] invalid = Arrays.copyOf(utf8, utf8.length - 3);
+            invalid[invalid.length - 1] = '}';
+            JSON5ParseError expect = assertThrows(JSON5ParseError.class, () -> new JSON5Parser(new Recorder())
+                    .parse(Channels.newChannel(new ByteArrayInputStream(invalid)), SOURCE, null));
+            JSON5ParseError got = assertThrows(JSON5ParseError.class,
+                    () -> parser.parse(trickle(invalid, 1000, Integer.MAX_VALUE), SOURCE, null));
+            assertEquals(expect.getMessage(), got.getMessage());
+            IOException failed = assertThrows(IOException.class,
+                    () -> parser.parse(trickle(utf8, 1000, 200_000), SOURCE, null));
+            assertEquals("failed", failed.getMessage());
+
+            // The buffers are reused afterwards:
+            Recorder recorder = new Recorder();
+            parser.setVisitor(recorder).parse(trickle(utf8, 4096, Integer.MAX_VALUE), SOURCE, null);
+            assertEquals(sequential.events, recorder.events);
+            parser.setReadAhead(null);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Tag("unit")
+    @Test
+    public void limits() throws Exception {
+        JSON5Limits limits = new JSON5Limits().setMaxStringChars(5).setMaxDepth(2).setMaxNumberDigits(4)
+                .setMaxDocumentBytes(64).setMaxTokenBytes(16);
+        parser.setVisitor(new Recorder()).setLimits(limits);
+        // Within the limits:
+        parser.parse("{a: [1234, 'ab\\u00e9\\n\u00e9'], bcdef: -1.234}", SOURCE);
+
+        // Each limit fails at the token (or container) which exceeds it:
+        Map<String, String> errors = new LinkedHashMap<>();
+        errors.put("{a: [1, 'abcdef']}", "String exceeds 5 chars@1:8");
+        errors.put("{a: 1, abcdef: 2}", "String exceeds 5 chars@1:7");
+        errors.put("['abc\\u0041\\n\\t']", "String exceeds 5 chars@1:1");
+        errors.put("['\ud83d\ude00\ud83d\ude00\ud83d\ude00']", "String exceeds 5 chars@1:1");
+        errors.put("{a: [[1]]}", "Depth exceeds 2@1:5");
+        errors.put("[\n  1.2345]", "Number exceeds 4 digits@2:4");
+        errors.put("[0x12345]", "Number exceeds 4 digits@1:1");
+        StringBuilder big = new StringBuilder("[");
+        for (int i = 0; i < 30; i++) {
+            big.append("1,\n");
+        }
+        errors.put(big.append("]").toString(), "Document exceeds 64 bytes@22:64");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (Map.Entry<String, String> entry : errors.entrySet()) {
+                for (Executor pipeline : new Executor[] { null, executor }) {
+                    JSON5ParseError err = assertThrows(JSON5ParseError.class,
+                            () -> parser.setPipeline(pipeline).parse(entry.getKey(), SOURCE), entry.getKey());
+                    String msg = err.getMessage();
+                    JSON5Location location = err.getLocation();
+                    assertEquals(entry.getValue(), msg.substring(msg.indexOf(": ") + 2, msg.indexOf('\n')) + "@"
+                            + location.getLineNumber() + ":" + location.getByteOffset(), entry.getKey());
+                }
+                // Validating discards strings and numbers, but enforces the same limits:
+                parser.setPipeline(null);
+                JSON5ParseError expect = assertThrows(JSON5ParseError.class,
+                        () -> parser.parse(entry.getKey(), SOURCE));
+                JSON5ParseError err = assertThrows(JSON5ParseError.class,
+                        () -> parser.validate(entry.getKey(), SOURCE), entry.getKey());
+                assertEquals(expect.getMessage(), err.getMessage(), entry.getKey());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Tokens which must be buffered are bounded:
+        String longComment = "[1,/* " + String.join("", Collections.nCopies(20, "x")) + " */2]";
+        JSON5ParseError err = assertThrows(JSON5ParseError.class,
+                () -> parser.parse(trickle(longComment.getBytes(UTF_8), 5, Integer.MAX_VALUE), SOURCE, null));
+        assertEquals(3, err.getLocation().getByteOffset());
+        parser.parse(longComment, SOURCE);
+
+        // The limits of a pool apply to every parser acquired from it:
+        JSON5ParserPool pool = new JSON5ParserPool().setLimits(new JSON5Limits().setMaxDepth(1));
+        pool.parse("[1, 2]", SOURCE, new Recorder());
+        assertThrows(JSON5ParseError.class, () -> pool.parse("[[1]]", SOURCE, new Recorder()));
+        assertThrows(IllegalArgumentException.class, () -> new JSON5Limits().setMaxDepth(0));
+
+        parser.setLimits(null);
+        assertEquals(Integer.MAX_VALUE, parser.getLimits().getMaxDepth());
+        parser.parse(big.toString(), SOURCE);
+    }
+
+    @Tag("unit")
+    @Test
+    public void multiDocument() {
+        String input = "{a: 1}\n[2] 3 'x'\n// comment\nnull\n";
+        // Only a single document by default:
+        JSON5ParseError single = assertThrows(JSON5ParseError.class, () -> parser.parse(input, SOURCE));
+        assertEquals(7, single.getLocation().getByteOffset());
+
+        Recorder recorder = new Recorder() {
+            @Override
+            public void endDocument(int line, long offset) {
+                events.add("$@" + line + ":" + offset);
+            }
+        };
+        parser.setMultiDocument(true).setVisitor(recorder).parse(input, SOURCE);
+        assertEquals(Arrays.asList("{@1:0", "a:@1:1", "1@1:4", "}@1:5", "$@1:5", "[@2:7", "#0@2:8", "2@2:8", "]@2:9",
+                "$@2:9", "3@2:11", "$@2:11", "'x'@2:13", "$@2:13", "null@4:28", "$@4:28"), recorder.events);
+
+        // No documents at all:
+        recorder.events.clear();
+        parser.parse(" // nothing\n", SOURCE);
+        assertEquals(Arrays.asList(), recorder.events);
+
+        JSON5ParseError err = assertThrows(JSON5ParseError.class, () -> parser.parse("{a: 1}\n{b: }}\n", SOURCE));
+        assertEquals(2, err.getLocation().getLineNumber());
+        assertThrows(JSON5ParseError.class, () -> parser.parse("[1]\n[2\n", SOURCE));
+        parser.setMultiDocument(false);
+    }
+
+    @Tag("unit")
+    @Test
+    public void linesExecutor() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            sb.append("{id: ").append(i).append(", tags: ['a', \"b\\n\"], nested: {x: [null, ").append(i % 2 == 0)
+                    .append("]}}\r\n");
+            if (0 == i % 7)
+                sb.append("// comment\n\n");
+            if (0 == i % 13) {
+                // Records may span lines:
+                sb.append("{\n  s: 'line \\\ncontinuation', /* block\ncomment */ x: [\n    ").append(i)
+                        .append(",\n  ],\n}\n\"multi\\\nline\"\n");
+            }
+            if (0 == i % 100) {
+                sb.append("['");
+                for (int j = 0; j < 500; j++) {
+                    sb.append("\u00e9");
+                }
+                sb.append("']\n");
+            }
+        }
+        sb.append("'last line without a newline'");
+        byte[] utf8 = sb.toString().getBytes(UTF_8);
+
+        Recorder sequential = new Recorder() {
+            @Override
+            public void endDocument(int line, long offset) {
+                events.add("$@" + line + ":" + offset);
+            }
+        };
+        parser.setMultiDocument(true).setVisitor(sequential).parse(utf8, SOURCE);
+        parser.setMultiDocument(false);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            JSON5LinesExecutor lines = new JSON5LinesExecutor(new JSON5ParserPool(), executor, 3);
+            for (int batchSize : new int[] { 1, 100, 4096, 1 << 20 }) {
+                lines.setBatchSize(batchSize).setOrdered(true);
+                List<String> got = new ArrayList<>();
+                lines.parse(Channels.newChannel(new ByteArrayInputStream(utf8)), SOURCE, () -> new Recorder() {
+                    @Override
+                    public void endDocument(int line, long offset) {
+                        events.add("$@" + line + ":" + offset);
+                    }
+                }, recorder -> got.addAll(recorder.events));
+                assertEquals(sequential.events, got, "batchSize=" + batchSize);
+
+                lines.setOrdered(false);
+                got.clear();
+                lines.parse(Channels.newChannel(new ByteArrayInputStream(utf8)), SOURCE, Recorder::new,
+                        recorder -> got.addAll(recorder.events));
+                got.sort(null);
+                List<String> sorted = new ArrayList<>(sequential.events);
+                sorted.removeIf(event -> event.startsWith("$"));
+                sorted.sort(null);
+                assertEquals(sorted, got, "batchSize=" + batchSize);
+            }
+
+            // The same error as a sequential parse, after the records before it:
+            byte[] invalid = "[1]\n[2]\n{a: [3}\n[4]\n".getBytes(UTF_8);
+            JSON5ParseError expect = assertThrows(JSON5ParseError.class,
+                    () -> parser.setMultiDocument(true).parse(invalid, SOURCE));
+            parser.setMultiDocument(false);
+            lines.setBatchSize(4).setOrdered(true);
+            List<String> got = new ArrayList<>();
+            JSON5ParseError err = assertThrows(JSON5ParseError.class,
+                    () -> lines.parse(Channels.newChannel(new ByteArrayInputStream(invalid)), SOURCE, Recorder::new,
+                            recorder -> got.addAll(recorder.events)));
+            assertEquals(expect.getMessage(), err.getMessage());
+            assertEquals(Arrays.asList("[@1:0", "#0@1:1", "1@1:1", "]@1:2", "[@2:4", "#0@2:5", "2@2:5", "]@2:6"), got);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Tag("unit")
+    @Test
+    public void symbolTable() throws IOException {
+        List<String> keys = new ArrayList<>();
+        JSON5Visitor visitor = new JSON5Visitor() {
+            @Override
+            public void visitKey(String key, int line, long offset) {
+                keys.add(key);
+            }
+        };
+        JSON5SymbolTable symbols = new JSON5SymbolTable(4, 8);
+        parser.setVisitor(visitor).setSymbolTable(symbols);
+        parser.parse("[{id:1,'name':'a'},{\"id\":2,name:'b'},{averyveryverylongkey:3,\\u0069d:4}]", SOURCE);
+        assertEquals(Arrays.asList("id", "name", "id", "name", "averyveryverylongkey", "id"), keys);
+        assertSame(keys.get(0), keys.get(2));
+        assertSame(keys.get(1), keys.get(3));
+        // Escaped keys are not interned:
+        assertNotSame(keys.get(0), keys.get(5));
+        assertEquals(2, symbols.getHits());
+        assertEquals(3, symbols.getMisses());
+
+        // Share with another parser:
+        keys.clear();
+        new JSON5Parser(visitor).setSymbolTable(symbols).parse("{name: 1}", SOURCE);
+        assertSame(keys.get(0), parser.getSymbolTable().lookup(ByteBuffer.wrap("name".getBytes(UTF_8)), 0, 4)
+                .asKey());
+        assertEquals(4, symbols.getHits());
+
+        // Interning can be disabled:
+        keys.clear();
+        parser.setSymbolTable(null).parse("[{id:1},{id:2}]", SOURCE);
+        assertEquals(Arrays.asList("id", "id"), keys);
+        assertNotSame(keys.get(0), keys.get(1));
+    }
+
+    @Tag("unit")
+    @Test
+    public void parsePathWithoutSize() throws IOException {
+        // Files in procfs report a size of zero, so can not be mapped:
+        Path file = Paths.get("/proc/self/oom_score_adj");
+        assumeTrue(Files.isReadable(file));
+        List<Object> got = new ArrayList<>();
+        parser.setVisitor(new JSON5Visitor() {
+            @Override
+            public void visit(Number val, int line, long offset) {
+                got.add(val);
+            }
+        }).parse(file);
+        assertEquals(1, got.size());
+        parser.validate(file);
+    }
+
+    @Tag("unit")
+    @Test
+    public void validatePipe(@TempDir Path dir) throws Exception {
+        Path pipe = dir.resolve("pipe");
+        assumeTrue(mkfifo(pipe));
+        String input = "{\n  a: [1, {b: 2 c: 3}]\n}";
+        JSON5ParseError expect = assertThrows(JSON5ParseError.class, () -> parser.parse(input, SOURCE));
+        // Opening the pipe blocks until it is opened for reading:
+        Thread writer = new Thread(() -> {
+            try {
+                Files.write(pipe, input.getBytes(UTF_8));
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        writer.setDaemon(true);
+        writer.start();
+        // A pipe can only be read once, so reading it again would block forever:
+        JSON5ParseError err = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> assertThrows(JSON5ParseError.class, () -> parser.validate(pipe)));
+        assertEquals(expect.getLocation().getLineNumber(), err.getLocation().getLineNumber());
+        assertEquals(expect.getLocation().getByteOffset(), err.getLocation().getByteOffset());
+        assertEquals("location: /a/1/b", err.getMessage().substring(err.getMessage().lastIndexOf('\n') + 1));
+    }
+
+    private static boolean mkfifo(Path path) throws InterruptedException {
+        try {
+            return 0 == new ProcessBuilder("mkfifo", path.toString()).start().waitFor();
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    @Tag("unit")
+    @Test
+    public void parseMappedWindows(@TempDir Path dir) throws IOException {
+        StringBuilder sb = new StringBuilder("[\n");
+        for (int i = 0; i < 200; i++) {
+            sb.append("  {id: ").append(i).append(", name: 'name-").append(i).append("'},\n");
+        }
+        sb.append("  '");
+        for (int i = 0; i < 100; i++) {
+            sb.append("a token which is much longer than a window ");
+        }
+        sb.append("',\n]\n");
+        Path file = dir.resolve("windows.json5");
+        Files.write(file, sb.toString().getBytes(UTF_8));
+
+        List<Object> expect = new ArrayList<>();
+        List<Object> got = expect;
+        JSON5Visitor visitor = new JSON5Visitor() {
+            @Override
+            public void visit(Number val, int line, long offset) {
+                got.add(val);
+            }
+
+            @Override
+            public void visit(String val, int line, long offset) {
+                got.add(val + "@" + line + ":" + offset);
+            }
+
+            @Override
+            public void visitKey(String key, int line, long offset) {
+                got.add(key);
+            }
+        };
+        parser.setVisitor(visitor).parse(sb.toString(), SOURCE);
+        List<Object> mapped = new ArrayList<>();
+        JSON5Parser small = new JSON5Parser(new JSON5Visitor() {
+            @Override
+            public void visit(Number val, int line, long offset) {
+                mapped.add(val);
+            }
+
+            @Override
+            public void visit(String val, int line, long offset) {
+                mapped.add(val + "@" + line + ":" + offset);
+            }
+
+            @Override
+            public void visitKey(String key, int line, long offset) {
+                mapped.add(key);
+            }
+        });
+        small.mapWindowSize = 16;
+        small.parse(file);
+        assertEquals(expect, mapped);
+
+        // Raw views of the mapped input may be retained:
+        List<ByteBuffer> raw = new ArrayList<>();
+        small.setVisitor(new JSON5Visitor() {
+            @Override
+            public void visit(JSON5StringView val, int line, long offset) {
+                raw.add(val.getRawUTF8());
+            }
+        }).parse(file);
+        System.gc();
+        assertEquals(201, raw.size());
+        assertEquals("name-199", UTF_8.decode(raw.get(199)).toString());
+
+        // The file is closed, but errors still show the source-text:
+        Files.write(file, "{\n  a: 1,\n  b 2,\n}".getBytes(UTF_8));
+        JSON5ParseError ex = assertThrows(JSON5ParseError.class, () -> small.parse(file));
+        assertEquals(3, ex.getLocation().getLineNumber());
+        assertEquals("  b 2,", ex.getLocation().getContextLine());
+        Files.delete(file);
+    }
+
+    @Tag("unit")
+    @Test
+    public void parseStream() throws IOException {
+        String doc = "// stream\n{id: 12345, name: 'caf\u00e9 \\u00e9', tags: ['a', \"b\"], big: 1.5e300, ok: true}";
+        List<Object> expect = new ArrayList<>();
+        List<Object> got = new ArrayList<>();
+        List<Object>[] into = new List[] { expect };
+        parser.setVisitor(new JSON5Visitor() {
+            @Override
+            public void visit(Number val, int line, long offset) {
+                into[0].add(val + "@" + line + ":" + offset);
+            }
+
+            @Override
+            public void visit(String val, int line, long offset) {
+                into[0].add(val + "@" + line + ":" + offset);
+            }
+
+            @Override
+            public void visit(boolean val, int line, long offset) {
+                into[0].add(val + "@" + line + ":" + offset);
+            }
+
+            @Override
+            public void visitKey(String key, int line, long offset) {
+                into[0].add(key);
+            }
+
+            @Override
+            public void visitComment(String comment, int line, long offset) {
+                into[0].add(comment);
+            }
+        });
+        parser.parse(doc, SOURCE);
+        byte[] utf8 = doc.getBytes(UTF_8);
+        into[0] = got;
+        for (int chunkSize = 1; chunkSize < 20; chunkSize++) {
+            got.clear();
+            ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+            parser.beginStream(SOURCE);
+            boolean complete = false;
+            for (int i = 0; i < utf8.length; i += chunkSize) {
+                // Reuse the same chunk to ensure the parser copies partial tokens:
+                chunk.clear();
+                chunk.put(utf8, i, Math.min(chunkSize, utf8.length - i));
+                chunk.flip();
+                assertEquals(false, complete);
+                complete = parser.feed(chunk);
+                assertEquals(0, chunk.remaining());
+                Arrays.fill(chunk.array(), (byte) '!');
+            }
+            assertEquals(true, complete);
+            parser.endStream();
+            assertEquals(expect, got, "chunkSize=" + chunkSize);
+        }
+
+        // Top-level number is incomplete until the end of stream:
+        parser.beginStream(SOURCE);
+        assertEquals(false, parser.feed(ByteBuffer.wrap("12".getBytes(UTF_8))));
+        assertEquals(false, parser.feed(ByteBuffer.wrap("3".getBytes(UTF_8))));
+        got.clear();
+        parser.endStream();
+        assertEquals(Arrays.asList("123@1:0"), got);
+
+        parser.beginStream(SOURCE);
+        parser.feed(ByteBuffer.wrap("[1, ".getBytes(UTF_8)));
+        assertThrows(JSON5ParseError.class, () -> parser.endStream());
+        assertThrows(IllegalStateException.class, () -> parser.feed(ByteBuffer.wrap("1".getBytes(UTF_8))));
+    }
+
+    @Tag("unit")
+    @Test
+    public void parserPool() throws Exception {
+        JSON5ParserPool pool = new JSON5ParserPool(1, 1024, new JSON5SymbolTable());
+        JSON5Parser first = pool.acquire();
+        pool.release(first);
+        assertSame(first, pool.acquire());
+        JSON5Parser second = pool.acquire();
+        assertNotSame(first, second);
+        assertSame(pool.getSymbolTable(), second.getSymbolTable());
+        pool.release(first);
+        pool.release(second);
+        assertEquals(1, pool.getIdleCount());
+
+        // Settings of the borrower are reset on release:
+        JSON5Parser reset = pool.acquire();
+        pool.release(reset.setLosslessDecimals(true).setPipeline(Runnable::run).setReadAhead(Runnable::run));
+        assertSame(reset, pool.acquire());
+        assertNull(reset.getPipeline());
+        assertNull(reset.getReadAhead());
+        List<Object> decimals = new ArrayList<>();
+        reset.setVisitor(new JSON5Visitor() {
+            @Override
+            public void visit(Number val, int line, long offset) {
+                decimals.add(val);
+            }
+        }).parse("0.1234567890123456789", SOURCE);
+        assertEquals(Arrays.asList(0.1234567890123456789), decimals);
+        pool.release(reset);
+
+        // Large strings grow the buffers, which are trimmed on release:
+        StringBuilder sb = new StringBuilder("'");
+        for (int i = 0; i < 10000; i++) {
+            sb.append("\\t").append(i);
+        }
+        String big = sb.append("'").toString();
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int id = t;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < 200; i++) {
+                        long[] sum = new long[1];
+                        String[] key = new String[1];
+                        JSON5Visitor visitor = new JSON5Visitor() {
+                            @Override
+                            public void visitNumber(long val, int line, long offset) {
+                                sum[0] += val;
+                            }
+
+                            @Override
+                            public void visitKey(String val, int line, long offset) {
+                                key[0] = val;
+                            }
+                        };
+                        pool.parse("{thread" + id + ": [" + i + ", " + id + "]}", SOURCE, visitor);
+                        assertEquals(i + id, sum[0]);
+                        assertEquals("thread" + id, key[0]);
+                        if (0 == i % 50)
+                            pool.parse(big, SOURCE, visitor);
+                    }
+                } catch (Throwable ex) {
+                    synchronized (errors) {
+                        errors.add(ex);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Arrays.asList(), errors);
+        assertEquals(1, pool.getIdleCount());
+    }
+
     @Tag("unit")
     @Test
     public void treeBuilderExample() throws IOException {
@@ -252,6 +1717,197 @@ public class JSON5ParserTest {
         }), value);
     }
 
+    @Tag("unit")
+    @Test
+    public void readerExample() throws IOException {
+        List<Object> got = new ArrayList<>();
+        try (JSON5Reader reader = parser.reader(Paths.get("src/test/resources/example1.json5"))) {
+            for (JSON5Reader.Token token = reader.nextToken(); token != JSON5Reader.Token.END_OF_STREAM; token = reader
+                    .nextToken()) {
+                switch (token) {
+                    case KEY:
+                        got.add(reader.getString() + ":");
+                        break;
+                    case STRING:
+                        got.add(reader.getString());
+                        break;
+                    case NUMBER:
+                        got.add(reader.getNumber());
+                        break;
+                    case BOOLEAN:
+                        got.add(reader.getBoolean());
+                        break;
+                    default:
+                        got.add(token);
+                }
+                if ("Oscar".equals(got.get(got.size() - 1))) {
+                    assertEquals(Arrays.asList(new JSON5Key("pets"), new JSON5Key(1), new JSON5Key("name")),
+                            reader.getLocation().getPath());
+                }
+            }
+            assertEquals(JSON5Reader.Token.END_OF_STREAM, reader.nextToken());
+        }
+        assertEquals(Arrays.asList(JSON5Reader.Token.START_OBJECT, "fname:", "George", "lname:", "Henderson", "pets:",
+                JSON5Reader.Token.START_ARRAY, JSON5Reader.Token.START_OBJECT, "type:", "duck", "name:", "Donald",
+                JSON5Reader.Token.END_OBJECT, JSON5Reader.Token.START_OBJECT, "type:", "dog", "name:", "Oscar",
+                JSON5Reader.Token.END_OBJECT, JSON5Reader.Token.END_ARRAY, "friends:", JSON5Reader.Token.START_ARRAY,
+                "Joe", "Bob", "Mary", JSON5Reader.Token.END_ARRAY, "favoriteFood:", JSON5Reader.Token.NULL, "isNice:",
+                false, "age:", 35L, JSON5Reader.Token.END_OBJECT), got);
+    }
+
+    @Tag("unit")
+    @Test
+    public void readerSkipChildren() throws IOException {
+        StringBuilder sb = new StringBuilder("{skip:[");
+        for (int i = 0; i < 10000; i++) {
+            sb.append("{a:[1,2,'").append(i).append("']},");
+        }
+        sb.append("], keep: 'yes'}");
+        JSON5Reader reader = parser.reader(sb.toString(), SOURCE);
+        assertEquals(JSON5Reader.Token.START_OBJECT, reader.nextToken());
+        assertEquals(JSON5Reader.Token.KEY, reader.nextToken());
+        assertEquals(JSON5Reader.Token.START_ARRAY, reader.nextToken());
+        reader.skipChildren();
+        assertEquals(JSON5Reader.Token.END_ARRAY, reader.getToken());
+        assertEquals(JSON5Reader.Token.KEY, reader.nextToken());
+        assertEquals("keep", reader.getString());
+        assertEquals(JSON5Reader.Token.STRING, reader.nextToken());
+        assertEquals("yes", reader.getString());
+        assertEquals(JSON5Reader.Token.END_OBJECT, reader.nextToken());
+        assertEquals(JSON5Reader.Token.END_OF_STREAM, reader.nextToken());
+    }
+
+    @Tag("unit")
+    @Test
+    public void readerChannel() throws IOException {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            sb.append("{s:'caf\u00e9 ").append(i).append("', e:'a\\tb', n:[").append(i)
+                    .append(", 1.5, -Infinity, 1e400, 12345678901234567890, -0x1FFFFFFFFFFFFFFFF]},");
+        }
+        sb.append("]");
+        byte[] utf8 = sb.toString().getBytes(UTF_8);
+        JSON5Reader reader = parser.reader(trickle(utf8, 7, Integer.MAX_VALUE), SOURCE, null);
+        assertEquals(JSON5Reader.Token.START_ARRAY, reader.nextToken());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(JSON5Reader.Token.START_OBJECT, reader.nextToken());
+            if (1 == i % 2) {
+                reader.skipChildren();
+                assertEquals(JSON5Reader.Token.END_OBJECT, reader.getToken());
+                assertEquals('}', utf8[(int) reader.getOffset()]);
+                continue;
+            }
+            assertEquals(JSON5Reader.Token.KEY, reader.nextToken());
+            assertEquals(JSON5Reader.Token.STRING, reader.nextToken());
+            assertEquals("caf\u00e9 " + i, reader.getString());
+            assertEquals(JSON5Reader.Token.KEY, reader.nextToken());
+            assertEquals(JSON5Reader.Token.STRING, reader.nextToken());
+            assertEquals("a\tb", reader.getString());
+            assertEquals(JSON5Reader.Token.KEY, reader.nextToken());
+            assertEquals(JSON5Reader.Token.START_ARRAY, reader.nextToken());
+            assertEquals(JSON5Reader.Token.NUMBER, reader.nextToken());
+            assertEquals((long) i, reader.getNumber());
+            assertEquals(JSON5Reader.Token.NUMBER, reader.nextToken());
+            assertEquals(1.5, reader.getNumber());
+            assertEquals(JSON5Reader.Token.NUMBER, reader.nextToken());
+            assertEquals(Double.NEGATIVE_INFINITY, reader.getDouble());
+            assertEquals(JSON5Reader.Token.NUMBER, reader.nextToken());
+            assertEquals(new BigDecimal("1e400"), reader.getNumber());
+            assertEquals(JSON5Reader.Token.NUMBER, reader.nextToken());
+            assertEquals(new BigInteger("12345678901234567890"), reader.getNumber());
+            assertEquals(JSON5Reader.Token.NUMBER, reader.nextToken());
+            assertEquals(new BigInteger("-1FFFFFFFFFFFFFFFF", 16), reader.getNumber());
+            assertEquals(JSON5Reader.Token.END_ARRAY, reader.nextToken());
+            assertEquals(JSON5Reader.Token.END_OBJECT, reader.nextToken());
+        }
+        assertEquals(JSON5Reader.Token.END_ARRAY, reader.nextToken());
+        assertEquals(JSON5Reader.Token.END_OF_STREAM, reader.nextToken());
+
+        // Skipped input is still validated:
+        JSON5Reader invalid = parser.reader("[{a:[1 2]}, 3]", SOURCE);
+        assertEquals(JSON5Reader.Token.START_ARRAY, invalid.nextToken());
+        assertEquals(JSON5Reader.Token.START_OBJECT, invalid.nextToken());
+        assertThrows(JSON5ParseError.class, invalid::skipChildren);
+    }
+
+    @Tag("unit")
+    @Test
+    public void readerLargeToken() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        String str = sb.toString();
+        JSON5Reader reader = parser.reader("['" + str + "', 1.5]", SOURCE);
+        assertEquals(JSON5Reader.Token.START_ARRAY, reader.nextToken());
+        assertEquals(JSON5Reader.Token.STRING, reader.nextToken());
+        assertEquals(str, reader.getString());
+        assertEquals(JSON5Reader.Token.NUMBER, reader.nextToken());
+        assertEquals(1.5, reader.getDouble());
+        assertEquals(JSON5Reader.Token.END_ARRAY, reader.nextToken());
+        assertEquals(JSON5Reader.Token.END_OF_STREAM, reader.nextToken());
+    }
+
+    @Tag("unit")
+    @Test
+    public void readerNumbers() throws Exception {
+        parser.setVisitor(new JSON5Visitor() {
+        });
+        parser.setProjection(new JSON5Projection("/b"));
+        JSON5Reader reader = parser.reader("{a: [0.1, -1.5e-3, 3.14159265358979323846264338327950288, 7], b: 2e400}",
+                SOURCE);
+        // Tokens reach the reader without a visitor, and the projection is ignored:
+        Field visitorField = JSON5Parser.class.getDeclaredField("visitor");
+        visitorField.setAccessible(true);
+        assertNull(visitorField.get(parser));
+        assertEquals(JSON5Reader.Token.START_OBJECT, reader.nextToken());
+        assertEquals(JSON5Reader.Token.KEY, reader.nextToken());
+        assertEquals("a", reader.getString());
+        assertEquals(JSON5Reader.Token.START_ARRAY, reader.nextToken());
+        assertEquals(JSON5Reader.Token.NUMBER, reader.nextToken());
+        assertEquals(0.1, reader.getDouble());
+        assertEquals(Double.valueOf(0.1), reader.getNumber());
+        assertEquals(JSON5Reader.Token.NUMBER, reader.nextToken());
+        assertEquals(-1.5e-3, reader.getDouble());
+        assertEquals(0L, reader.getLong());
+        assertEquals(JSON5Reader.Token.NUMBER, reader.nextToken());
+        assertEquals(Math.PI, reader.getDouble());
+        assertEquals(JSON5Reader.Token.NUMBER, reader.nextToken());
+        assertEquals(7.0, reader.getDouble());
+        assertEquals(JSON5Reader.Token.END_ARRAY, reader.nextToken());
+        assertEquals(JSON5Reader.Token.KEY, reader.nextToken());
+        assertEquals(JSON5Reader.Token.NUMBER, reader.nextToken());
+        assertEquals(new BigDecimal("2e400"), reader.getNumber());
+        assertEquals(Double.POSITIVE_INFINITY, reader.getDouble());
+        assertEquals(JSON5Reader.Token.END_OBJECT, reader.nextToken());
+        assertEquals(JSON5Reader.Token.END_OF_STREAM, reader.nextToken());
+
+        // The parser goes back to its grammar afterwards:
+        parser.setProjection(null);
+        List<Object> got = new ArrayList<>();
+        parser.setVisitor(new JSON5Visitor() {
+            @Override
+            public void visit(Number val, int line, long offset) {
+                got.add(val);
+            }
+        });
+        parser.parse("[1, 0.5]", SOURCE);
+        assertEquals(Arrays.asList(1L, 0.5), got);
+    }
+
+    @Tag("unit")
+    @Test
+    public void readerError() throws IOException {
+        JSON5Reader reader = parser.reader("[1, 2 3]", SOURCE);
+        assertEquals(JSON5Reader.Token.START_ARRAY, reader.nextToken());
+        assertEquals(JSON5Reader.Token.NUMBER, reader.nextToken());
+        assertEquals(1L, reader.getLong());
+        assertEquals(JSON5Reader.Token.NUMBER, reader.nextToken());
+        assertEquals(2L, reader.getLong());
+        JSON5ParseError ex = assertThrows(JSON5ParseError.class, reader::nextToken);
+        assertEquals(6, ex.getLocation().getByteOffset());
+    }
+
     private Map<String, Object> map(Consumer<Map<String, Object>> fn) {
         Map<String, Object> map = new HashMap<>();
         fn.accept(map);